@@ -3,19 +3,76 @@
  */
 package org.ligoj.app.plugin.prov.fe;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.ws.rs.DefaultValue;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.EntityTag;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import jakarta.ws.rs.sse.OutboundSseEvent;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseBroadcaster;
+import jakarta.ws.rs.sse.SseEventSink;
 
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.ligoj.app.plugin.prov.AbstractProvResource;
 import org.ligoj.app.plugin.prov.ProvResource;
+import org.ligoj.app.plugin.prov.catalog.ImportCatalogResource;
 import org.ligoj.app.plugin.prov.catalog.ImportCatalogService;
+import org.ligoj.app.plugin.prov.fe.catalog.FeCatalogLease;
+import org.ligoj.app.plugin.prov.fe.catalog.FeImportSkippedException;
+import org.ligoj.app.plugin.prov.fe.catalog.FeImportProgress;
 import org.ligoj.app.plugin.prov.fe.catalog.FePriceImport;
+import org.ligoj.app.plugin.prov.fe.catalog.FePriceIndex;
+import org.ligoj.app.plugin.prov.fe.catalog.FeRejectSink;
+import org.ligoj.app.plugin.prov.fe.dao.FePriceHistoryRepository;
+import org.ligoj.app.plugin.prov.fe.model.FePriceChange;
+import org.ligoj.app.plugin.prov.fe.model.FePriceHistory;
+import org.ligoj.app.plugin.prov.model.VmOs;
+import org.ligoj.bootstrap.core.security.SecurityHelper;
 import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * The provisioning service for Digital Ocean. There is complete quote configuration along the subscription.
@@ -23,6 +80,7 @@ import org.springframework.stereotype.Service;
 @Service
 @Path(ProvFePluginResource.SERVICE_URL)
 @Produces(MediaType.APPLICATION_JSON)
+@Slf4j
 public class ProvFePluginResource extends AbstractProvResource implements ImportCatalogService {
 
 	/**
@@ -40,12 +98,207 @@ public class ProvFePluginResource extends AbstractProvResource implements Import
 	 */
 	public static final String KEY = SERVICE_URL.replace('/', ':').substring(1);
 
+	/**
+	 * Configuration key used for the built-in catalog refresh interval, in minutes. When value is <code>0</code>, the
+	 * scheduled refresh is disabled. Read again on each refresh tick, a change does not need a restart.
+	 */
+	public static final String CONF_REFRESH = KEY + ":refresh-interval";
+
+	/**
+	 * Maximal jitter added to the refresh interval, in percent of this interval.
+	 */
+	private static final int REFRESH_JITTER = 10;
+
+	/**
+	 * Delay between two checks of the scheduled refresh, in milliseconds.
+	 */
+	private static final long REFRESH_TICK = 60_000;
+
+	/**
+	 * Maximal delay between two progress events, in milliseconds. A comment is sent when the progress did not change, to
+	 * detect the closed connections.
+	 */
+	private static final long PROGRESS_KEEP_ALIVE = 15_000;
+
+	/**
+	 * Delay before the browser reconnects to the progress stream after a network failure, in milliseconds.
+	 */
+	private static final long PROGRESS_RETRY = 5_000;
+
+	/**
+	 * Amount of price changes read per query by the differential feed.
+	 */
+	private static final int CHANGES_PAGE_SIZE = 1000;
+
+	/**
+	 * Default amount of prices per page of the price stream.
+	 */
+	private static final int PRICES_PAGE_SIZE = 1000;
+
+	/**
+	 * Maximal amount of prices per page of the price stream.
+	 */
+	private static final int PRICES_MAX_PAGE_SIZE = 10000;
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	/**
+	 * Cost change of an instance price.
+	 *
+	 * @param revision    The catalog revision of the import run having changed this price.
+	 * @param kind        The kind of change.
+	 * @param cost        The new monthly cost, or the last one when the price is removed.
+	 * @param initialCost The new initial cost. May be <code>null</code>.
+	 * @param imported    The start date of the import run having changed this price.
+	 */
+	public record PriceChange(long revision, FePriceChange kind, double cost, Double initialCost, Instant imported) {
+	}
+
 	@Autowired
 	protected FePriceImport priceImport;
 
 	@Autowired
 	protected ConfigurationResource configuration;
 
+	@Autowired
+	protected FePriceIndex priceIndex;
+
+	@Autowired
+	protected FePriceHistoryRepository historyRepository;
+
+	@Autowired
+	protected FeImportProgress progress;
+
+	@Autowired
+	protected FeCatalogLease lease;
+
+	@Autowired
+	protected SecurityHelper securityHelper;
+
+	@Autowired
+	protected ImportCatalogResource importCatalogResource;
+
+	@Autowired
+	protected PlatformTransactionManager transactionManager;
+
+	@PersistenceContext(unitName = "pu")
+	protected EntityManager em;
+
+	/**
+	 * Running import shared by the concurrent callers. <code>null</code> when no import is running.
+	 */
+	private CompletableFuture<Void> running;
+
+	/**
+	 * When <code>true</code>, the running import updates all cost attributes.
+	 */
+	private boolean runningForce;
+
+	/**
+	 * Amount of callers attached to the running import.
+	 */
+	protected final AtomicInteger attached = new AtomicInteger();
+
+	private ThreadPoolTaskScheduler scheduler;
+
+	/**
+	 * Refresh interval of the planned refresh, in minutes. <code>0</code> when the refresh is disabled.
+	 */
+	private int refreshInterval;
+
+	/**
+	 * Time of the next scheduled refresh, in milliseconds.
+	 */
+	protected volatile long nextRefresh;
+
+	/**
+	 * Background catalog refresh following the bundled install, on a daemon thread.
+	 */
+	private final ExecutorService refresher = Executors.newSingleThreadExecutor(r -> {
+		final var thread = new Thread(r, "fe-catalog-refresh");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Broadcaster of the progress events to the connected clients, created with the first client.
+	 */
+	private SseBroadcaster progressBroadcaster;
+
+	/**
+	 * Single daemon thread feeding the progress broadcaster, whatever the amount of connected clients.
+	 */
+	private final ExecutorService progressFeeder = Executors.newSingleThreadExecutor(r -> {
+		final var thread = new Thread(r, "fe-progress-feed");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Start the ticks of the scheduled catalog refresh, on a daemon thread.
+	 */
+	@PostConstruct
+	public void scheduleRefresh() {
+		scheduler = new ThreadPoolTaskScheduler();
+		scheduler.setThreadNamePrefix("fe-catalog-schedule-");
+		scheduler.setDaemon(true);
+		scheduler.initialize();
+		scheduler.scheduleAtFixedRate(this::refreshTick, Instant.now().plusMillis(REFRESH_TICK), Duration.ofMillis(REFRESH_TICK));
+	}
+
+	/**
+	 * Start the catalog refresh when it is due, according to the current configuration. The refresh is an import task
+	 * run as the system user, like the imports requested from the catalog screen.
+	 */
+	protected void refreshTick() {
+		final var interval = NumberUtils.toInt(configuration.get(CONF_REFRESH, "0"));
+		final var now = System.currentTimeMillis();
+		if (interval <= 0) {
+			refreshInterval = 0;
+		} else if (interval != refreshInterval) {
+			// Enabled or updated interval, counted from now
+			refreshInterval = interval;
+			nextRefresh = now + withJitter(interval);
+		} else if (now >= nextRefresh) {
+			nextRefresh = now + withJitter(interval);
+			final var context = SecurityContextHolder.getContext();
+			securityHelper.setUserName(SecurityHelper.SYSTEM_USERNAME);
+			try {
+				importCatalogResource.updateCatalog(KEY, false);
+			} catch (final RuntimeException e) {
+				log.error("FE scheduled catalog refresh failed", e);
+			} finally {
+				SecurityContextHolder.setContext(context);
+			}
+		}
+	}
+
+	/**
+	 * Return the given interval in milliseconds, with a jitter spreading the refresh of the nodes sharing the same
+	 * configuration.
+	 */
+	private long withJitter(final int interval) {
+		final var delay = TimeUnit.MINUTES.toMillis(interval);
+		return delay + ThreadLocalRandom.current().nextLong(delay * REFRESH_JITTER / 100 + 1);
+	}
+
+	/**
+	 * Stop the scheduled catalog refresh and close the progress streams.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		if (scheduler != null) {
+			scheduler.shutdown();
+		}
+		refresher.shutdownNow();
+		progressFeeder.shutdownNow();
+		synchronized (progressFeeder) {
+			if (progressBroadcaster != null) {
+				progressBroadcaster.close();
+			}
+		}
+	}
+
 	@Override
 	public String getKey() {
 		return KEY;
@@ -64,18 +317,391 @@ public class ProvFePluginResource extends AbstractProvResource implements Import
 	}
 
 	/**
-	 * Fetch the prices from the DigitalOcean server. Install or update the prices
+	 * Install the prices bundled in this plugin, then refresh them from the remote catalog in background. Without
+	 * bundled prices, the remote catalog is installed synchronously. When another application node is importing the
+	 * catalog, the installation relies on its import.
 	 */
 	@Override
 	public void install() throws Exception {
-		priceImport.install(false);
+		try {
+			installCatalog();
+		} catch (final FeImportSkippedException e) {
+			log.info("FE catalog is installed by another node");
+		}
+	}
+
+	private void installCatalog() throws Exception {
+		priceIndex.invalidate();
+		if (priceImport.installBundled()) {
+			priceIndex.build();
+			refresher.execute(() -> {
+				// No user is attached to this thread, the import runs as the system user
+				securityHelper.setUserName(SecurityHelper.SYSTEM_USERNAME);
+				try {
+					installAndIndex(false);
+				} catch (final Exception e) {
+					log.error("FE catalog refresh after the bundled install failed", e);
+				} finally {
+					SecurityContextHolder.clearContext();
+				}
+			});
+		} else {
+			installAndIndex(false);
+		}
 	}
 
 	@Override
 	public void updateCatalog(final String node, final boolean force) throws Exception {
 		// Digital Ocean catalog is shared with all instances, require tool level access
 		nodeResource.checkWritableNode(KEY);
-		priceImport.install(force);
+		installAndIndex(force);
+	}
+
+	/**
+	 * Install or update the prices, then rebuild the price index. Concurrent callers are attached to the running import
+	 * and get its result. A forced request attached to a not forced import waits for it, then runs a forced one. When
+	 * another application node holds the import lease, a {@link FeImportSkippedException} is thrown and the index is
+	 * not rebuilt: it is reloaded once the completion marker of this other node appears.
+	 */
+	protected void installAndIndex(final boolean force) throws Exception {
+		final CompletableFuture<Void> flight;
+		final boolean owner;
+		final boolean upgrade;
+		synchronized (this) {
+			owner = running == null;
+			if (owner) {
+				running = new CompletableFuture<>();
+				runningForce = force;
+			}
+			flight = running;
+			upgrade = !owner && force && !runningForce;
+		}
+
+		if (owner) {
+			try {
+				priceIndex.invalidate();
+				priceImport.install(force);
+				priceIndex.build();
+			} catch (final Throwable e) {
+				// Whatever the failure, even an error, the attached callers and the next imports must not wait forever
+				land();
+				flight.completeExceptionally(e);
+				throw e;
+			}
+			land();
+			flight.complete(null);
+			return;
+		}
+
+		log.info("FE catalog import already running, attach to it (force={})", force);
+		attached.incrementAndGet();
+		try {
+			flight.get();
+		} catch (final ExecutionException e) {
+			if (!upgrade) {
+				if (e.getCause() instanceof Error error) {
+					throw error;
+				}
+				throw (Exception) e.getCause();
+			}
+		} finally {
+			attached.decrementAndGet();
+		}
+		if (upgrade) {
+			// The running import did not update all cost attributes
+			installAndIndex(true);
+		}
+	}
+
+	/**
+	 * Detach the running import, the next caller starts a new one.
+	 */
+	private synchronized void land() {
+		running = null;
+	}
+
+	/**
+	 * Cancel the catalog import running on this application node. The changes of the current phase are rolled back and
+	 * the import status is marked as failed.
+	 *
+	 * @return <code>true</code> when an import was running and has been requested to stop.
+	 */
+	@POST
+	@Path("cancel")
+	public boolean cancel() {
+		nodeResource.checkWritableNode(KEY);
+		return priceImport.cancel();
+	}
+
+	/**
+	 * Stream the progress of the catalog imports running on this application node as server-sent events. An event is
+	 * pushed on each phase change, and during the instance phase on each batch of processed rows. The stream stays open
+	 * between two imports with periodic comments, and ends when the client disconnects. No request thread is held: all
+	 * the streams are fed by a single broadcaster.
+	 *
+	 * @param sink The event sink of the client, receiving the <code>progress</code> events, holding the JSON snapshot of
+	 *             the progress.
+	 * @param sse  The server-sent events context.
+	 */
+	@GET
+	@Path("progress")
+	@Produces(MediaType.SERVER_SENT_EVENTS)
+	public void progress(@Context final SseEventSink sink, @Context final Sse sse) {
+		nodeResource.checkWritableNode(KEY);
+		getProgressBroadcaster(sse).register(sink);
+		sink.send(newProgressEvent(sse, progress.get()));
+	}
+
+	/**
+	 * Return the progress broadcaster, and start feeding it with the first client.
+	 */
+	private SseBroadcaster getProgressBroadcaster(final Sse sse) {
+		synchronized (progressFeeder) {
+			if (progressBroadcaster == null) {
+				final var broadcaster = sse.newBroadcaster();
+				broadcaster.onError((sink, e) -> log.debug("FE progress stream closed: {}", e.getMessage()));
+				progressFeeder.execute(() -> feedProgress(sse, broadcaster));
+				progressBroadcaster = broadcaster;
+			}
+			return progressBroadcaster;
+		}
+	}
+
+	/**
+	 * Broadcast each progress snapshot, and a comment when the progress did not change for a while to detect the
+	 * closed connections.
+	 */
+	private void feedProgress(final Sse sse, final SseBroadcaster broadcaster) {
+		var version = progress.get().version();
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				final var snapshot = progress.await(version, PROGRESS_KEEP_ALIVE);
+				if (snapshot.version() == version) {
+					broadcaster.broadcast(sse.newEventBuilder().comment("keep-alive").build());
+				} else {
+					version = snapshot.version();
+					broadcaster.broadcast(newProgressEvent(sse, snapshot));
+				}
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private OutboundSseEvent newProgressEvent(final Sse sse, final FeImportProgress.Snapshot snapshot) {
+		try {
+			return sse.newEventBuilder().name("progress").reconnectDelay(PROGRESS_RETRY).data(MAPPER.writeValueAsString(snapshot)).build();
+		} catch (final JsonProcessingException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Return the diagnostics of the rows rejected by the last parsing of the FE sheets on this application node.
+	 *
+	 * @return The rejected rows counts by reason, and the first rejected rows.
+	 */
+	@GET
+	@Path("rejects")
+	public FeRejectSink getRejects() {
+		return priceImport.getRejects();
+	}
+
+	/**
+	 * Return the cost changes of an instance price, recorded by the catalog imports.
+	 *
+	 * @param code The instance price code.
+	 * @return The cost changes ordered by import date.
+	 */
+	@GET
+	@Path("history")
+	public List<PriceChange> getHistory(@QueryParam("code") final String code) {
+		nodeResource.checkWritableNode(KEY);
+		return historyRepository.findAllByCode(code).stream()
+				.map(h -> new PriceChange(h.getRevision(), h.getKind(), h.getCost(), h.getInitialCost(), h.getImported())).toList();
+	}
+
+	/**
+	 * Return the instance price changes published after the given catalog revision, up to the revision of the last
+	 * successful import. The changes are streamed by pages, so the response size follows the delta, not the catalog.
+	 *
+	 * @param since The last revision known by the consumer, <code>0</code> for all the recorded changes.
+	 * @return The published revision and the price changes ordered by occurrence. A consumer stores this revision and
+	 *         sends it back on the next call.
+	 */
+	@GET
+	@Path("changes")
+	@Produces(MediaType.APPLICATION_JSON)
+	public StreamingOutput getChanges(@QueryParam("since") @DefaultValue("0") final long since) {
+		final var revision = lease.getPublished(KEY);
+		return output -> {
+			try (var json = MAPPER.getFactory().createGenerator(output)) {
+				json.writeStartObject();
+				json.writeNumberField("since", since);
+				json.writeNumberField("revision", revision);
+				json.writeArrayFieldStart("changes");
+				var after = 0;
+				var page = historyRepository.findAllChanges(since, revision, after, PageRequest.of(0, CHANGES_PAGE_SIZE));
+				while (!page.isEmpty()) {
+					for (final var change : page) {
+						json.writeStartObject();
+						json.writeNumberField("revision", change.getRevision());
+						json.writeStringField("kind", change.getKind().name());
+						json.writeStringField("code", change.getCode());
+						json.writeNumberField("cost", change.getCost());
+						if (change.getInitialCost() != null) {
+							json.writeNumberField("initialCost", change.getInitialCost());
+						}
+						json.writeStringField("imported", change.getImported().toString());
+						json.writeEndObject();
+					}
+					json.flush();
+					after = page.get(page.size() - 1).getId();
+					page = historyRepository.findAllChanges(since, revision, after, PageRequest.of(0, CHANGES_PAGE_SIZE));
+				}
+				json.writeEndArray();
+				json.writeEndObject();
+			}
+		};
+	}
+
+	/**
+	 * Stream a page of the FE instance prices, ordered by identifier. The retired prices are excluded. The prices are
+	 * shown at the published revision: the changes committed by an unfinished import are hidden. The entity tag is
+	 * built from the catalog revisions cached in memory, including the regions committed by an unfinished import, so a
+	 * client sending back this tag gets a <code>304</code> without database access until the next change, whatever the
+	 * application node having made it. The page is read in a read-only transaction while it is written.
+	 *
+	 * @param request  The request holding the preconditions.
+	 * @param location The optional location name filter.
+	 * @param type     The optional instance type code filter.
+	 * @param term     The optional term code filter.
+	 * @param os       The optional OS filter.
+	 * @param after    The excluded lowest price identifier, the <code>next</code> value of the previous page.
+	 * @param limit    The maximal amount of prices of this page.
+	 * @return The page of prices, with the <code>next</code> identifier when there are more prices.
+	 */
+	@GET
+	@Path("prices")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response getPrices(@Context final Request request, @QueryParam("location") final String location,
+			@QueryParam("type") final String type, @QueryParam("term") final String term, @QueryParam("os") final VmOs os,
+			@QueryParam("after") @DefaultValue("0") final int after, @QueryParam("limit") @DefaultValue("" + PRICES_PAGE_SIZE) final int limit) {
+		final var revisions = lease.getRevisions(KEY);
+		final var tag = new EntityTag(revisions.toTag());
+		final var notModified = request.evaluatePreconditions(tag);
+		if (notModified != null) {
+			return notModified.build();
+		}
+
+		final var jpql = new StringBuilder(
+				"SELECT p.id, p.code, p.location.name, p.type.code, p.term.code, p.os, p.software, p.cost, p.initialCost, p.costPeriod, p.period"
+						+ " FROM ProvInstancePrice p WHERE p.term.node.id = :node AND p.id > :after AND " + FePriceHistoryRepository.PUBLISHED);
+		final var parameters = new HashMap<String, Object>();
+		parameters.put("published", revisions.published());
+		addFilter(jpql, parameters, "location", "p.location.name", location);
+		addFilter(jpql, parameters, "type", "p.type.code", type);
+		addFilter(jpql, parameters, "term", "p.term.code", term);
+		addFilter(jpql, parameters, "os", "p.os", os);
+		jpql.append(" ORDER BY p.id");
+		final var size = Math.max(1, Math.min(limit, PRICES_MAX_PAGE_SIZE));
+		final StreamingOutput stream = output -> {
+			// Written after this method returns, the rows are read within their own transaction
+			final var transaction = new TransactionTemplate(transactionManager);
+			transaction.setReadOnly(true);
+			try {
+				transaction.executeWithoutResult(s -> {
+					try {
+						writePrices(output, jpql.toString(), parameters, revisions.published(), after, size);
+					} catch (final IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+			} catch (final UncheckedIOException e) {
+				throw e.getCause();
+			}
+		};
+		return Response.ok(stream).tag(tag).build();
+	}
+
+	private void writePrices(final OutputStream output, final String jpql, final Map<String, Object> parameters, final long published,
+			final int after, final int size) throws IOException {
+		final var query = em.createQuery(jpql, Object[].class).setParameter("node", KEY).setParameter("after", after).setMaxResults(size);
+		parameters.forEach(query::setParameter);
+
+		// The cost changes of an unpublished import are replaced by the published costs
+		final var costs = historyRepository.findPublishedCosts(published).stream()
+				.collect(Collectors.toMap(FePriceHistory::getCode, Function.identity(), (a, b) -> a));
+		try (var json = MAPPER.getFactory().createGenerator(output)) {
+			json.writeStartObject();
+			json.writeArrayFieldStart("prices");
+			var count = 0;
+			var last = after;
+			try (var rows = query.getResultStream()) {
+				for (final var row : (Iterable<Object[]>) rows::iterator) {
+					last = (Integer) row[0];
+					count++;
+					json.writeStartObject();
+					json.writeNumberField("id", last);
+					json.writeStringField("code", (String) row[1]);
+					json.writeStringField("location", (String) row[2]);
+					json.writeStringField("type", (String) row[3]);
+					json.writeStringField("term", (String) row[4]);
+					json.writeStringField("os", ((VmOs) row[5]).name());
+					if (row[6] != null) {
+						json.writeStringField("software", (String) row[6]);
+					}
+					final var cost = costs.get((String) row[1]);
+					if (cost == null) {
+						writeCosts(json, ((Number) row[7]).doubleValue(), (Double) row[8], ((Number) row[9]).doubleValue());
+					} else {
+						final var initialCost = cost.getInitialCost();
+						final var costPeriod = ObjectUtils.defaultIfNull(initialCost, 0d) + cost.getCost() * ((Number) row[10]).doubleValue();
+						writeCosts(json, cost.getCost(), initialCost, Math.round(costPeriod * 1000) / 1000d);
+					}
+					json.writeEndObject();
+				}
+			}
+			json.writeEndArray();
+			if (count == size) {
+				json.writeNumberField("next", last);
+			}
+			json.writeEndObject();
+		}
+	}
+
+	private void writeCosts(final JsonGenerator json, final double cost, final Double initialCost, final double costPeriod) throws IOException {
+		json.writeNumberField("cost", cost);
+		if (initialCost != null) {
+			json.writeNumberField("initialCost", initialCost);
+		}
+		json.writeNumberField("costPeriod", costPeriod);
+	}
+
+	private void addFilter(final StringBuilder jpql, final Map<String, Object> parameters, final String name, final String path,
+			final Object value) {
+		if (value != null) {
+			jpql.append(" AND ").append(path).append(" = :").append(name);
+			parameters.put(name, value);
+		}
+	}
+
+	/**
+	 * Return the cheapest FE instance price matching to the given requirements, resolved from the in-memory index.
+	 *
+	 * @param location The location name.
+	 * @param os       The requested OS.
+	 * @param term     The term code.
+	 * @param cpu      The minimal CPU.
+	 * @param ram      The minimal RAM, in MiB.
+	 * @return The cheapest matching price, or <code>null</code> when none matches.
+	 */
+	@GET
+	@Path("lookup")
+	public FePriceIndex.Entry lookup(@QueryParam("location") final String location, @DefaultValue("LINUX") @QueryParam("os") final VmOs os,
+			@DefaultValue("on-demand") @QueryParam("term") final String term, @QueryParam("cpu") final double cpu,
+			@QueryParam("ram") final int ram) {
+		return priceIndex.lookup(location, os, term, cpu, ram);
 	}
 
 	@Override
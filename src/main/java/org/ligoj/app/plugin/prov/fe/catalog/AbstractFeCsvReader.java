@@ -6,6 +6,7 @@ package org.ligoj.app.plugin.prov.fe.catalog;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.List;
+import java.util.regex.Pattern;
 
 import org.ligoj.bootstrap.core.csv.CsvBeanReader;
 import org.ligoj.bootstrap.core.csv.CsvReader;
@@ -17,11 +18,21 @@ import org.ligoj.bootstrap.core.csv.CsvReader;
  */
 public abstract class AbstractFeCsvReader<T> extends CsvBeanReader<T> {
 
+	/**
+	 * Pattern of the production for compute and OS. Sample <code>Paris - t2.micro (1 vCPU, 1GB RAM)</code>
+	 */
+	protected static final Pattern PRODUCT_PATTERN = Pattern.compile("^\\s*([^\\s]+)\\s*-\\s*([^\\s]+)\\s*\\(.*$");
+
 	/**
 	 * CSV raw data reader.
 	 */
 	private final CsvReader csvReaderProxy;
 
+	/**
+	 * Record number of the last read row.
+	 */
+	private int line;
+
 	/**
 	 * Build a CSV reader to build objects.
 	 *
@@ -30,7 +41,20 @@ public abstract class AbstractFeCsvReader<T> extends CsvBeanReader<T> {
 	 * @param beanType The target bean type.
 	 */
 	public AbstractFeCsvReader(final Reader reader, final String[] headers, final Class<T> beanType) {
+		this(reader, headers, beanType, 1);
+	}
+
+	/**
+	 * Build a CSV reader to build objects.
+	 *
+	 * @param reader   The CSV input, starting from the first raw.
+	 * @param headers  The header used to parse the CSV file.
+	 * @param beanType The target bean type.
+	 * @param line     The amount of records already consumed from the CSV input.
+	 */
+	public AbstractFeCsvReader(final Reader reader, final String[] headers, final Class<T> beanType, final int line) {
 		super(reader, beanType, headers);
+		this.line = line;
 
 		// Makes visible this entry
 		this.csvReaderProxy = new CsvReader(reader);
@@ -39,36 +63,39 @@ public abstract class AbstractFeCsvReader<T> extends CsvBeanReader<T> {
 	@Override
 	public T read() throws IOException {
 		// Read the raw entries to check the build/skip option
-		final var rawValues = csvReaderProxy.read();
+		var rawValues = csvReaderProxy.read();
 
-		// Build only for AWS compute instance
-		if (rawValues.isEmpty()) {
-			// EOF
-			return null;
-		}
-		for (var i = 0; i < rawValues.size(); i++) {
+		// Build only for AWS compute instance, until the EOF
+		while (!rawValues.isEmpty()) {
+			line++;
+			for (var i = 0; i < rawValues.size(); i++) {
+
+				// Drop "?" prices
+				if ("?".equals(rawValues.get(i))) {
+					rawValues.set(i, "");
+				}
 
-			// Drop "?" prices
-			if ("?".equals(rawValues.get(i))) {
-				rawValues.set(i, "");
+				// Remove the optional "€" currency char
+				rawValues.set(i, rawValues.get(i).replace("€", ""));
+			}
+			if (isValidRaw(rawValues, line)) {
+				return build(rawValues, null);
 			}
 
-			// Remove the optional "€" currency char
-			rawValues.set(i, rawValues.get(i).replace("€", ""));
-		}
-		if (isValidRaw(rawValues)) {
-			return build(rawValues, null);
+			// Skip this entry
+			rawValues = csvReaderProxy.read();
 		}
 
-		// Skip this entry
-		return read();
+		// EOF
+		return null;
 	}
 
 	/**
 	 * Check the given raw is valid to build an AWS Price. When invalid, the record is dropped.
 	 *
 	 * @param rawValues The column of the current record.
+	 * @param line      The record number of the current record.
 	 * @return <code>true</code> when this record can be used to build a bean.
 	 */
-	protected abstract boolean isValidRaw(final List<String> rawValues);
+	protected abstract boolean isValidRaw(final List<String> rawValues, final int line);
 }
@@ -6,9 +6,8 @@ package org.ligoj.app.plugin.prov.fe.catalog;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.function.Predicate;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
@@ -21,6 +20,11 @@ import org.ligoj.bootstrap.core.csv.CsvReader;
  */
 public class CsvForBeanFe extends AbstractCsvManager {
 
+	/**
+	 * Sheet name used in the diagnostics.
+	 */
+	private static final String SHEET = "compute";
+
 	private final CsvBeanReader<CsvPrice> beanReader;
 
 	/**
@@ -29,27 +33,29 @@ public class CsvForBeanFe extends AbstractCsvManager {
 	private boolean convertible = false;
 
 	/**
-	 * CSV Mapping to Java bean property
+	 * Filter of the product cells. Rejected rows are not bound.
 	 */
-	protected static final Map<String, String> HEADERS_MAPPING = new HashMap<>();
-	static {
-		HEADERS_MAPPING.put("product", "product");
-		HEADERS_MAPPING.put("cpu", "cpu");
-		HEADERS_MAPPING.put("ram (GB)", "ram");
-		HEADERS_MAPPING.put("cost_h", "cost1h");
-		HEADERS_MAPPING.put("cost_m", "cost1m");
-		HEADERS_MAPPING.put("cost_m_1y_no_upfront", "cost1yPerMonth");
-		HEADERS_MAPPING.put("cost_1y_upfront_fees", "cost1yUFFee");
-		HEADERS_MAPPING.put("cost_m_1y_upfront", "cost1yUFPerMonth");
-		HEADERS_MAPPING.put("cost_2y_upfront_fees", "cost2yUFFee");
-		HEADERS_MAPPING.put("cost_m_2y_upfront", "cost2yUFPerMonth");
-		HEADERS_MAPPING.put("cost_m_3y_no_upfront", "cost3yPerMonth");
-		HEADERS_MAPPING.put("cost_3y_upfront_fees", "cost3yUFFee");
-		HEADERS_MAPPING.put("cost_m_3y_upfront", "cost3yUFPerMonth");
-		HEADERS_MAPPING.put("cost_m_5y_no_upfront", "cost5yPerMonth");
-		HEADERS_MAPPING.put("cost_m_3y_convertible", "cost3yPerMonthConvertible");
+	private final Predicate<String> productFilter;
 
-	}
+	/**
+	 * Diagnostics of the rejected rows.
+	 */
+	private final FeRejectSink rejects;
+
+	/**
+	 * Symbol table of the retained cells.
+	 */
+	private final FeSymbolTable symbols;
+
+	/**
+	 * Detected layout of the sheet.
+	 */
+	private final FeSheetSchema schema;
+
+	/**
+	 * Index of the CPU column.
+	 */
+	private final int cpu;
 
 	/**
 	 * Build the reader parsing the CSV file from AWS to build {@link AwsEc2Price} instances. Non AWS instances data are
@@ -59,50 +65,76 @@ public class CsvForBeanFe extends AbstractCsvManager {
 	 * @throws IOException When CSV content cannot be read.
 	 */
 	public CsvForBeanFe(final BufferedReader reader) throws IOException {
+		this(reader, p -> true, new FeRejectSink(), new FeSymbolTable());
+	}
 
-		// Complete the standard mappings
-		final var mMapping = new HashMap<>(HEADERS_MAPPING);
-		final var csvReader = new CsvReader(reader);
-
-		// The real CSV header has be reached
-		this.beanReader = newCsvReader(reader,
-				csvReader.read().stream().map(v -> mMapping.getOrDefault(v, "drop")).toArray(String[]::new));
+	/**
+	 * Build the reader parsing the CSV file, only binding the rows whose product is accepted by the given filter.
+	 *
+	 * @param reader        The original CSV input.
+	 * @param productFilter The filter of the product cells.
+	 * @param rejects       The diagnostics of the rejected rows.
+	 * @param symbols       The symbol table of the retained cells.
+	 * @throws IOException When CSV content cannot be read.
+	 */
+	public CsvForBeanFe(final BufferedReader reader, final Predicate<String> productFilter, final FeRejectSink rejects,
+			final FeSymbolTable symbols) throws IOException {
+		this.productFilter = productFilter;
+		this.rejects = rejects;
+		this.symbols = symbols;
+
+		// Detect the layout from the header fingerprint, and consume the machine header
+		this.schema = FeSheetSchemaRegistry.detect(SHEET, reader);
+		if (schema.isHeader()) {
+			new CsvReader(reader).read();
+		}
+		this.beanReader = newCsvReader(reader, schema.getColumns());
+		this.cpu = schema.indexOf("cpu");
 	}
 
 	protected CsvBeanReader<CsvPrice> newCsvReader(final Reader reader, final String[] headers) {
-		return new AbstractFeCsvReader<>(reader, headers, CsvPrice.class) {
+		return new AbstractFeCsvReader<>(reader, headers, CsvPrice.class, schema.isHeader() ? 1 : 0) {
 
 			@Override
-			protected boolean isValidRaw(final List<String> rawValues) {
-				return CsvForBeanFe.this.isValidRaw(rawValues);
+			protected boolean isValidRaw(final List<String> rawValues, final int line) {
+				return CsvForBeanFe.this.isValidRaw(rawValues, line);
 			}
 
 		};
 	}
 
-	private boolean isValidRaw(final List<String> rawValues) {
-		if (!rawValues.isEmpty()) {
-			// Check the convertible switch mode
-			final var col0 = rawValues.get(0);
-			if (StringUtils.containsIgnoreCase(col0, "Flexible Elastic Cloud Serve")) {
-				// Encounter the convertible "ECS" switch
-				convertible = true;
-			} else if (StringUtils.containsIgnoreCase(col0, "ECS - Orange Business Services Compute")) {
-				// Encounter the not convertible "ECS" switch
-				convertible = false;
-			}
-			if (StringUtils.equalsIgnoreCase(col0, "Produit")) {
-				// Ignore original CSV headers
-				return false;
-			}
+	private boolean isValidRaw(final List<String> rawValues, final int line) {
+		// Check the convertible switch mode
+		final var col0 = rawValues.get(schema.getProduct());
+		if (StringUtils.containsIgnoreCase(col0, "Flexible Elastic Cloud Serve")) {
+			// Encounter the convertible "ECS" switch
+			convertible = true;
+			return false;
+		}
+		if (StringUtils.containsIgnoreCase(col0, "ECS - Orange Business Services Compute")) {
+			// Encounter the not convertible "ECS" switch
+			convertible = false;
+			return false;
+		}
+		if (StringUtils.equalsAnyIgnoreCase(col0, "Produit", "Product") || rawValues.size() < schema.getMinSize() || col0.isBlank()) {
+			// Ignore original CSV headers and separators
+			return false;
+		}
+		if (!NumberUtils.isDigits(rawValues.get(cpu))) {
+			rejects.reject(SHEET, line, FeRejectSink.Reason.INVALID_CPU, col0);
+			return false;
+		}
+		if (!AbstractFeCsvReader.PRODUCT_PATTERN.matcher(col0).find()) {
+			rejects.reject(SHEET, line, FeRejectSink.Reason.INVALID_PRODUCT, col0);
+			return false;
 		}
-		if (rawValues.size() < 19 || !NumberUtils.isDigits(rawValues.get(1))) {
+		if (!productFilter.test(col0)) {
 			return false;
 		}
 
-		// Sanitize amounts
-		rawValues.set(1, rawValues.get(1).replaceAll("[^\\d,]", ""));
-		rawValues.set(2, rawValues.get(2).replaceAll("[^\\d,]", ""));
+		// Share the product with the other rows, and sanitize amounts
+		rawValues.set(schema.getProduct(), symbols.intern(col0));
+		schema.sanitize(rawValues);
 		return true;
 	}
 
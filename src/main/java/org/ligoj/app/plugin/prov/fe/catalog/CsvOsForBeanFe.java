@@ -6,10 +6,9 @@ package org.ligoj.app.plugin.prov.fe.catalog;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.StringUtils;
@@ -18,14 +17,16 @@ import org.ligoj.bootstrap.core.csv.AbstractCsvManager;
 import org.ligoj.bootstrap.core.csv.CsvBeanReader;
 import org.ligoj.bootstrap.core.csv.CsvReader;
 
-import lombok.extern.slf4j.Slf4j;
-
 /**
  * Read AWS EC2 CSV input, skipping the AWS headers and non instance type rows.
  */
-@Slf4j
 public class CsvOsForBeanFe extends AbstractCsvManager {
 
+	/**
+	 * Sheet name used in the diagnostics.
+	 */
+	private static final String SHEET = "os";
+
 	private final CsvBeanReader<CsvOsPrice> beanReader;
 
 	/**
@@ -39,14 +40,29 @@ public class CsvOsForBeanFe extends AbstractCsvManager {
 	private String software;
 
 	/**
-	 * CSV Mapping to Java bean property
+	 * Filter of the product cells. Rejected rows are not bound.
 	 */
-	protected static final Map<String, String> HEADERS_MAPPING = new HashMap<>();
-	static {
-		HEADERS_MAPPING.put("product", "product");
-		HEADERS_MAPPING.put("cost_h", "cost1h");
-		HEADERS_MAPPING.put("cost_m", "cost1m");
-	}
+	private final Predicate<String> productFilter;
+
+	/**
+	 * Filter of the OS blocks. Rows of rejected blocks are not bound.
+	 */
+	private final Predicate<VmOs> osFilter;
+
+	/**
+	 * Diagnostics of the rejected rows.
+	 */
+	private final FeRejectSink rejects;
+
+	/**
+	 * Symbol table of the retained cells.
+	 */
+	private final FeSymbolTable symbols;
+
+	/**
+	 * Detected layout of the sheet.
+	 */
+	private final FeSheetSchema schema;
 
 	private static final Pattern PATTERN_LICENCE = Pattern.compile("Licence (.*)\\s+\\(.*");
 
@@ -58,82 +74,111 @@ public class CsvOsForBeanFe extends AbstractCsvManager {
 	 * @throws IOException When CSV content cannot be read.
 	 */
 	public CsvOsForBeanFe(final BufferedReader reader) throws IOException {
+		this(reader, p -> true, o -> true, new FeRejectSink(), new FeSymbolTable());
+	}
 
-		// Complete the standard mappings
-		final var mMapping = new HashMap<>(HEADERS_MAPPING);
-		final var csvReader = new CsvReader(reader);
-
-		// The real CSV header has be reached
-		this.beanReader = newCsvReader(reader,
-				csvReader.read().stream().map(v -> mMapping.getOrDefault(v, "drop")).toArray(String[]::new));
+	/**
+	 * Build the reader parsing the CSV file, only binding the rows whose product and OS are accepted by the given
+	 * filters.
+	 *
+	 * @param reader        The original CSV input.
+	 * @param productFilter The filter of the product cells.
+	 * @param osFilter      The filter of the OS blocks.
+	 * @param rejects       The diagnostics of the rejected rows.
+	 * @param symbols       The symbol table of the retained cells.
+	 * @throws IOException When CSV content cannot be read.
+	 */
+	public CsvOsForBeanFe(final BufferedReader reader, final Predicate<String> productFilter, final Predicate<VmOs> osFilter,
+			final FeRejectSink rejects, final FeSymbolTable symbols) throws IOException {
+		this.productFilter = productFilter;
+		this.osFilter = osFilter;
+		this.rejects = rejects;
+		this.symbols = symbols;
+
+		// Detect the layout from the header fingerprint, and consume the machine header
+		this.schema = FeSheetSchemaRegistry.detect(SHEET, reader);
+		if (schema.isHeader()) {
+			new CsvReader(reader).read();
+		}
+		this.beanReader = newCsvReader(reader, schema.getColumns());
 	}
 
 	protected CsvBeanReader<CsvOsPrice> newCsvReader(final Reader reader, final String[] headers) {
-		return new AbstractFeCsvReader<>(reader, headers, CsvOsPrice.class) {
+		return new AbstractFeCsvReader<>(reader, headers, CsvOsPrice.class, schema.isHeader() ? 1 : 0) {
 
 			@Override
-			protected boolean isValidRaw(final List<String> rawValues) {
-				return CsvOsForBeanFe.this.isValidRaw(rawValues);
+			protected boolean isValidRaw(final List<String> rawValues, final int line) {
+				return CsvOsForBeanFe.this.isValidRaw(rawValues, line);
 			}
 		};
 	}
 
-	private boolean isValidRaw(final List<String> rawValues) {
-		if (!rawValues.isEmpty()) {
-			// Check the convertible switch mode
-			final var col0 = rawValues.get(0);
-			final var matcher = PATTERN_LICENCE.matcher(col0);
-
-			if (matcher.find()) {
-				final var licPart = matcher.group(1).toUpperCase(Locale.ENGLISH);
-				// New block
-				if (licPart.contains("WINDOWS")) {
-					os = VmOs.WINDOWS;
-					software = null;// No supported software for Windows
-				} else if (licPart.contains("REDHAT")) {
-					os = VmOs.RHEL;
-					software = null;// No supported software for RHEL
-				} else if (licPart.contains("SUSE")) {
-					os = VmOs.SUSE;
-					if ((licPart.contains("SAP APPLICATIONS"))) {
-						software = "SAP APPLICATIONS";
-					} else if ((licPart.contains("SAP"))) {
-						software = "SAP";
-					} else {
-						software = null;
-					}
+	private boolean isValidRaw(final List<String> rawValues, final int line) {
+		// Check the licence block switch
+		final var col0 = rawValues.get(schema.getProduct());
+		final var matcher = PATTERN_LICENCE.matcher(col0);
+		if (matcher.find()) {
+			final var licPart = matcher.group(1).toUpperCase(Locale.ENGLISH);
+			// New block
+			if (licPart.contains("WINDOWS")) {
+				os = VmOs.WINDOWS;
+				software = null;// No supported software for Windows
+			} else if (licPart.contains("REDHAT")) {
+				os = VmOs.RHEL;
+				software = null;// No supported software for RHEL
+			} else if (licPart.contains("SUSE")) {
+				os = VmOs.SUSE;
+				if ((licPart.contains("SAP APPLICATIONS"))) {
+					software = "SAP APPLICATIONS";
+				} else if ((licPart.contains("SAP"))) {
+					software = "SAP";
 				} else {
-					log.warn("Unsupported licence model {}", licPart);
+					software = null;
 				}
-				return false;
-			}
-			if (StringUtils.equalsIgnoreCase(col0, "Produit")) {
-				// Ignore original CSV headers
-				return false;
+			} else {
+				// The rows of this block are rejected
+				os = null;
+				software = null;
+				rejects.reject(SHEET, line, FeRejectSink.Reason.UNSUPPORTED_LICENCE, licPart);
 			}
+			return false;
 		}
-		if (rawValues.size() < 7 || rawValues.get(0).isBlank()) {
+		if (StringUtils.equalsAnyIgnoreCase(col0, "Produit", "Product") || rawValues.size() < schema.getMinSize() || col0.isBlank()) {
+			// Ignore original CSV headers and separators
 			return false;
 		}
-		
-		// Sanitize amounts
-		rawValues.set(5,rawValues.get(5).replaceAll("[^\\d,]", ""));
-		rawValues.set(6,rawValues.get(6).replaceAll("[^\\d,]", ""));
+		if (os == null) {
+			rejects.reject(SHEET, line, FeRejectSink.Reason.NO_LICENCE, col0);
+			return false;
+		}
+		if (!AbstractFeCsvReader.PRODUCT_PATTERN.matcher(col0).find()) {
+			rejects.reject(SHEET, line, FeRejectSink.Reason.INVALID_PRODUCT, col0);
+			return false;
+		}
+		if (!osFilter.test(os) || !productFilter.test(col0)) {
+			return false;
+		}
+
+		// Share the product with the other blocks, and sanitize amounts
+		rawValues.set(schema.getProduct(), symbols.intern(col0));
+		schema.sanitize(rawValues);
 		return true;
 	}
 
 	/**
 	 * Return a list of JPA bean re ad from the given CSV input. Headers are expected.
 	 *
-	 * @return The bean read from the next CSV record.
+	 * @return The bean read from the next CSV record. Return <code>null</code> when the EOF is reached.
 	 * @throws IOException When the CSV record cannot be read.
 	 */
 	public CsvOsPrice read() throws IOException {
 		final var entry = beanReader.read();
 
 		// Forward the block data
-		entry.setOs(os);
-		entry.setSoftware(software);
+		if (entry != null) {
+			entry.setOs(os);
+			entry.setSoftware(software);
+		}
 		return entry;
 	}
 }
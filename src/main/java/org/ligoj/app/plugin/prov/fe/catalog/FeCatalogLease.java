@@ -0,0 +1,280 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.fe.catalog;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.ligoj.app.plugin.prov.fe.ProvFePluginResource;
+import org.ligoj.app.plugin.prov.fe.dao.FeImportLeaseRepository;
+import org.ligoj.app.plugin.prov.fe.model.FeImportLease;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Database backed lease of the catalog import, shared by all the application nodes using the same database. Only one
+ * application node imports the catalog at a time, and the other ones rely on the completion marker to know when their
+ * local caches are outdated.
+ */
+@Component
+@Slf4j
+public class FeCatalogLease {
+
+	/**
+	 * Configuration key used for the lease duration without heartbeat, in seconds.
+	 */
+	public static final String CONF_LEASE_DURATION = ProvFePluginResource.KEY + ":lease-duration";
+
+	/**
+	 * Default lease duration, in seconds.
+	 */
+	private static final int DEFAULT_LEASE_DURATION = 600;
+
+	/**
+	 * Maximal age of the cached revisions, in milliseconds. The changes of the other application nodes are seen after
+	 * at most this delay.
+	 */
+	private static final long REVISIONS_TTL = 30_000;
+
+	/**
+	 * Catalog revisions as seen by the readers.
+	 *
+	 * @param published  The last published catalog revision.
+	 * @param revision   The last catalog revision assigned to an import.
+	 * @param checkpoint The last region committed by an unfinished import. May be <code>null</code>.
+	 * @param expiry     When these revisions must be read again from the database, in milliseconds.
+	 */
+	public record Revisions(long published, long revision, String checkpoint, long expiry) {
+
+		/**
+		 * Return the entity tag of the prices in this state: the published revision, followed by the last committed
+		 * region when an unfinished import has committed some regions of a later revision.
+		 *
+		 * @return The entity tag value.
+		 */
+		public String toTag() {
+			return checkpoint == null ? String.valueOf(published) : published + "-" + revision + "-" + checkpoint;
+		}
+	}
+
+	/**
+	 * Cached revisions by node.
+	 */
+	private final Map<String, Revisions> revisions = new ConcurrentHashMap<>();
+
+	@Autowired
+	protected FeImportLeaseRepository repository;
+
+	@Autowired
+	protected ConfigurationResource configuration;
+
+	/**
+	 * Identifier of this application node.
+	 */
+	@Getter
+	private final String owner = getHostName() + "/" + UUID.randomUUID();
+
+	private static String getHostName() {
+		try {
+			return InetAddress.getLocalHost().getHostName();
+		} catch (final UnknownHostException e) {
+			return "unknown";
+		}
+	}
+
+	private Instant getExpiry(final Instant now) {
+		return now.plusSeconds(NumberUtils.toInt(configuration.get(CONF_LEASE_DURATION, String.valueOf(DEFAULT_LEASE_DURATION))));
+	}
+
+	/**
+	 * Return the current time of the database. The dates of the lease are never taken from the clock of an application
+	 * node, so a node with a clock ahead cannot take a live lease.
+	 */
+	private Instant getNow(final String node) {
+		return repository.findNow(node).toInstant();
+	}
+
+	/**
+	 * Acquire the import lease of the given node.
+	 *
+	 * @param node The node identifier.
+	 * @return <code>true</code> when this application node owns the lease.
+	 */
+	public boolean acquire(final String node) {
+		if (!repository.existsById(node)) {
+			create(node);
+		}
+		final var now = getNow(node);
+		return repository.acquire(node, owner, now, getExpiry(now)) == 1;
+	}
+
+	/**
+	 * Create the lease row of the first import of the given node, without owner. The lease itself is acquired against
+	 * the database clock.
+	 */
+	private void create(final String node) {
+		final var lease = new FeImportLease();
+		lease.setNode(node);
+		lease.setHeartbeat(Instant.EPOCH);
+		lease.setExpiry(Instant.EPOCH);
+		try {
+			repository.saveAndFlush(lease);
+		} catch (final DataAccessException e) {
+			// Another application node created it first
+			log.info("FE import lease of {} created by another node", node);
+		}
+	}
+
+	/**
+	 * Extend the lease of this application node.
+	 *
+	 * @param node The node identifier.
+	 * @throws CancellationException When this application node has lost the lease. The import must stop and roll back its
+	 *                               current transaction, another node is importing.
+	 */
+	public void heartbeat(final String node) {
+		final var now = getNow(node);
+		if (repository.heartbeat(node, owner, now, getExpiry(now)) == 0) {
+			throw lost(node);
+		}
+	}
+
+	private CancellationException lost(final String node) {
+		log.warn("FE import lease of {} has been lost by {}", node, owner);
+		return new CancellationException("FE import lease of " + node + " has been lost by " + owner);
+	}
+
+	/**
+	 * Release the lease of this application node.
+	 *
+	 * @param node    The node identifier.
+	 * @param success When <code>true</code>, the completion marker is published.
+	 */
+	public void release(final String node, final boolean success) {
+		final var now = getNow(node);
+		if (success) {
+			repository.complete(node, owner, now);
+		} else {
+			repository.release(node, owner, now);
+		}
+		revisions.remove(node);
+	}
+
+	/**
+	 * Record the last region completed by this application node.
+	 *
+	 * @param node   The node identifier.
+	 * @param digest The digest of the imported catalog.
+	 * @param region The completed region.
+	 * @throws CancellationException When this application node has lost the lease.
+	 */
+	public void checkpoint(final String node, final String digest, final String region) {
+		if (repository.checkpoint(node, owner, digest, region) == 0) {
+			throw lost(node);
+		}
+		revisions.remove(node);
+	}
+
+	/**
+	 * Publish the catalog revision of the import of this application node: its changes become visible to the readers
+	 * of this plugin. Called in the transaction switching the catalog over, so the publication is atomic with the last
+	 * changes.
+	 *
+	 * @param node The node identifier.
+	 * @throws CancellationException When this application node has lost the lease.
+	 */
+	public void publish(final String node) {
+		if (repository.publish(node, owner) == 0) {
+			throw lost(node);
+		}
+		revisions.remove(node);
+	}
+
+	/**
+	 * Return the last region completed by an unfinished import of the given catalog, whatever the application node.
+	 *
+	 * @param node   The node identifier.
+	 * @param digest The digest of the catalog to import.
+	 * @return The last completed region, or <code>null</code> when there is nothing to resume for this catalog.
+	 */
+	public String getCheckpoint(final String node, final String digest) {
+		return repository.findCheckpoint(node, digest);
+	}
+
+	/**
+	 * Assign the next catalog revision to the import of this application node.
+	 *
+	 * @param node The node identifier.
+	 * @return The new revision.
+	 * @throws CancellationException When this application node has lost the lease.
+	 */
+	public long nextRevision(final String node) {
+		if (repository.nextRevision(node, owner) == 0) {
+			throw lost(node);
+		}
+		return ObjectUtils.defaultIfNull(repository.findRevision(node), 0L);
+	}
+
+	/**
+	 * Return the last published catalog revision, whatever the application node. The changes of this revision and the
+	 * previous ones are complete, the later ones are hidden from the readers of this plugin.
+	 *
+	 * @param node The node identifier.
+	 * @return The published revision, <code>0</code> before the first successful import.
+	 */
+	public long getPublished(final String node) {
+		return ObjectUtils.defaultIfNull(repository.findPublished(node), 0L);
+	}
+
+	/**
+	 * Return the revisions of the catalog, whatever the application node having changed them. They are cached in memory,
+	 * refreshed on the changes of this application node, and at least every {@value #REVISIONS_TTL} milliseconds for the
+	 * other nodes.
+	 *
+	 * @param node The node identifier.
+	 * @return The cached revisions of the catalog.
+	 */
+	public Revisions getRevisions(final String node) {
+		final var now = System.currentTimeMillis();
+		final var cached = revisions.get(node);
+		if (cached != null && now < cached.expiry()) {
+			return cached;
+		}
+		final var fresh = repository.findById(node)
+				.map(l -> new Revisions(ObjectUtils.defaultIfNull(l.getPublished(), 0L), ObjectUtils.defaultIfNull(l.getRevision(), 0L),
+						l.getCheckpointRegion(), now + REVISIONS_TTL))
+				.orElseGet(() -> new Revisions(0, 0, null, now + REVISIONS_TTL));
+		revisions.put(node, fresh);
+		return fresh;
+	}
+
+	/**
+	 * Forget the cached revisions of all nodes, they are read again from the database on the next access.
+	 */
+	public void invalidate() {
+		revisions.clear();
+	}
+
+	/**
+	 * Return the completion marker of the last successful import, whatever the application node.
+	 *
+	 * @param node The node identifier.
+	 * @return The completion marker. May be <code>null</code>.
+	 */
+	public Instant getCompleted(final String node) {
+		return repository.findCompleted(node);
+	}
+}
@@ -0,0 +1,250 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.fe.catalog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import org.ligoj.app.plugin.prov.model.VmOs;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Normalized result of the FE sheets parsing, stored as a compact versioned binary file. Installing from a snapshot
+ * skips the CSV tokenization, the header discovery and the sanitization.<br>
+ * Layout: magic number, format version, key, string table, then the OS prices and the compute prices, column by column.
+ * Strings are stored once in the string table and referenced by their index, <code>-1</code> for <code>null</code>.
+ * Missing costs are stored as <code>NaN</code>.
+ */
+@Getter
+@AllArgsConstructor
+public class FeCatalogSnapshot {
+
+	/**
+	 * Magic number: "FESC".
+	 */
+	private static final int MAGIC = 0x46455343;
+
+	/**
+	 * Version of the format and of the parsing producing the rows. Incremented when either changes, so a snapshot of the
+	 * previous parser is ignored and the sheets are parsed again. Version 2: layout detection and compiled column plans.
+	 */
+	public static final int VERSION = 2;
+
+	/**
+	 * Cost columns of compute prices.
+	 */
+	private static final List<Function<CsvPrice, Double>> GETTERS = List.of(CsvPrice::getCost1h, CsvPrice::getCost1m,
+			CsvPrice::getCost1yPerMonth, CsvPrice::getCost1yUFFee, CsvPrice::getCost1yUFPerMonth, CsvPrice::getCost2yUFFee,
+			CsvPrice::getCost2yUFPerMonth, CsvPrice::getCost3yPerMonth, CsvPrice::getCost3yUFFee, CsvPrice::getCost3yUFPerMonth,
+			CsvPrice::getCost5yPerMonth, CsvPrice::getCost3yPerMonthConvertible);
+
+	private static final List<BiConsumer<CsvPrice, Double>> SETTERS = List.of(CsvPrice::setCost1h, CsvPrice::setCost1m,
+			CsvPrice::setCost1yPerMonth, CsvPrice::setCost1yUFFee, CsvPrice::setCost1yUFPerMonth, CsvPrice::setCost2yUFFee,
+			CsvPrice::setCost2yUFPerMonth, CsvPrice::setCost3yPerMonth, CsvPrice::setCost3yUFFee, CsvPrice::setCost3yUFPerMonth,
+			CsvPrice::setCost5yPerMonth, CsvPrice::setCost3yPerMonthConvertible);
+
+	/**
+	 * Key of the parsed content. Built from the digest of the sheets.
+	 */
+	private final String key;
+
+	/**
+	 * Parsed OS prices.
+	 */
+	private final List<CsvOsPrice> osPrices;
+
+	/**
+	 * Parsed compute prices.
+	 */
+	private final List<CsvPrice> prices;
+
+	/**
+	 * Return the SHA-256 digest of the given contents.
+	 *
+	 * @param contents The raw contents.
+	 * @return The hexadecimal digest.
+	 */
+	public static String digest(final byte[]... contents) {
+		try {
+			final var digest = MessageDigest.getInstance("SHA-256");
+			for (final var content : contents) {
+				digest.update(content);
+			}
+			return HexFormat.of().formatHex(digest.digest());
+		} catch (final NoSuchAlgorithmException e) {
+			// Required by the JVM specification
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void intern(final Map<String, Integer> strings, final String value) {
+		if (value != null) {
+			strings.putIfAbsent(value, strings.size());
+		}
+	}
+
+	private static int indexOf(final Map<String, Integer> strings, final String value) {
+		return value == null ? -1 : strings.get(value);
+	}
+
+	private static String valueOf(final String[] strings, final int index) {
+		return index == -1 ? null : strings[index];
+	}
+
+	private static double toStored(final Double value) {
+		return value == null ? Double.NaN : value;
+	}
+
+	private static Double toCost(final double value) {
+		return Double.isNaN(value) ? null : value;
+	}
+
+	/**
+	 * Write this snapshot.
+	 *
+	 * @param output The target output. Not closed.
+	 * @throws IOException When the snapshot cannot be written.
+	 */
+	public void write(final OutputStream output) throws IOException {
+		final var out = new DataOutputStream(new BufferedOutputStream(output));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeUTF(key);
+
+		// String table
+		final var strings = new LinkedHashMap<String, Integer>();
+		osPrices.forEach(p -> {
+			intern(strings, p.getProduct());
+			intern(strings, p.getOs() == null ? null : p.getOs().name());
+			intern(strings, p.getSoftware());
+		});
+		prices.forEach(p -> intern(strings, p.getProduct()));
+		out.writeInt(strings.size());
+		for (final var value : strings.keySet()) {
+			out.writeUTF(value);
+		}
+
+		// OS prices
+		out.writeInt(osPrices.size());
+		for (final var p : osPrices) {
+			out.writeInt(indexOf(strings, p.getProduct()));
+		}
+		for (final var p : osPrices) {
+			out.writeInt(indexOf(strings, p.getOs() == null ? null : p.getOs().name()));
+		}
+		for (final var p : osPrices) {
+			out.writeInt(indexOf(strings, p.getSoftware()));
+		}
+		for (final var p : osPrices) {
+			out.writeDouble(toStored(p.getCost1h()));
+		}
+		for (final var p : osPrices) {
+			out.writeDouble(toStored(p.getCost1m()));
+		}
+
+		// Compute prices
+		out.writeInt(prices.size());
+		for (final var p : prices) {
+			out.writeInt(indexOf(strings, p.getProduct()));
+		}
+		for (final var p : prices) {
+			out.writeInt(p.getCpu());
+		}
+		for (final var p : prices) {
+			out.writeInt(p.getRam());
+		}
+		for (final var p : prices) {
+			out.writeBoolean(p.isConvertible());
+		}
+		for (final var getter : GETTERS) {
+			for (final var p : prices) {
+				out.writeDouble(toStored(getter.apply(p)));
+			}
+		}
+		out.flush();
+	}
+
+	/**
+	 * Read a snapshot.
+	 *
+	 * @param input The source input. Not closed.
+	 * @return The read snapshot, or <code>null</code> when the input is not a snapshot of the current version.
+	 * @throws IOException When the snapshot cannot be read.
+	 */
+	public static FeCatalogSnapshot read(final InputStream input) throws IOException {
+		final var in = new DataInputStream(new BufferedInputStream(input));
+		if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+			return null;
+		}
+		final var key = in.readUTF();
+
+		// String table
+		final var strings = new String[in.readInt()];
+		for (var i = 0; i < strings.length; i++) {
+			strings[i] = in.readUTF();
+		}
+
+		// OS prices
+		final var osPrices = new ArrayList<CsvOsPrice>();
+		final var nbOsPrices = in.readInt();
+		for (var i = 0; i < nbOsPrices; i++) {
+			final var price = new CsvOsPrice();
+			price.setProduct(valueOf(strings, in.readInt()));
+			osPrices.add(price);
+		}
+		for (final var p : osPrices) {
+			final var os = valueOf(strings, in.readInt());
+			p.setOs(os == null ? null : VmOs.valueOf(os));
+		}
+		for (final var p : osPrices) {
+			p.setSoftware(valueOf(strings, in.readInt()));
+		}
+		for (final var p : osPrices) {
+			p.setCost1h(toCost(in.readDouble()));
+		}
+		for (final var p : osPrices) {
+			p.setCost1m(toCost(in.readDouble()));
+		}
+
+		// Compute prices
+		final var prices = new ArrayList<CsvPrice>();
+		final var nbPrices = in.readInt();
+		for (var i = 0; i < nbPrices; i++) {
+			final var price = new CsvPrice();
+			price.setProduct(valueOf(strings, in.readInt()));
+			prices.add(price);
+		}
+		for (final var p : prices) {
+			p.setCpu(in.readInt());
+		}
+		for (final var p : prices) {
+			p.setRam(in.readInt());
+		}
+		for (final var p : prices) {
+			p.setConvertible(in.readBoolean());
+		}
+		for (final var setter : SETTERS) {
+			for (final var p : prices) {
+				setter.accept(p, toCost(in.readDouble()));
+			}
+		}
+		return new FeCatalogSnapshot(key, osPrices, prices);
+	}
+}
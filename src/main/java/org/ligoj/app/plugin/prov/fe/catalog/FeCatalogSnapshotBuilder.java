@@ -0,0 +1,109 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.fe.catalog;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.input.BOMInputStream;
+import org.apache.commons.lang3.StringUtils;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Build the catalog snapshot bundled in this plugin from the FE sheets, without any region, type or OS filter. Run at
+ * release time by the <code>bundle-catalog</code> build profile:
+ *
+ * <pre>
+ * mvn -Pbundle-catalog package
+ * </pre>
+ */
+@Slf4j
+public final class FeCatalogSnapshotBuilder {
+
+	/**
+	 * Filters of the bundled snapshot, the default ones of the import, so the key is the one of an unfiltered remote
+	 * import of the same sheets.
+	 */
+	private static final String FILTERS = ".*|.*|.*";
+
+	private FeCatalogSnapshotBuilder() {
+		// Builder
+	}
+
+	/**
+	 * Download the sheets and write the snapshot.
+	 *
+	 * @param args The snapshot file, then the optional base URL of the prices API, {@value FePriceImport#DEFAULT_API_PRICES}
+	 *             by default.
+	 * @throws IOException        When the sheets cannot be downloaded or parsed, or the snapshot cannot be written.
+	 * @throws URISyntaxException When the prices API URL is invalid.
+	 */
+	public static void main(final String[] args) throws IOException, URISyntaxException {
+		final var file = Path.of(args[0]);
+		final var api = StringUtils.removeEnd(args.length > 1 && StringUtils.isNotBlank(args[1]) ? args[1] : FePriceImport.DEFAULT_API_PRICES, "/");
+		final var snapshot = build(download(api + "/prices/pricing-os.csv", "os"), download(api + "/prices/pricing-compute.csv", "compute"));
+		Files.createDirectories(file.toAbsolutePath().getParent());
+		try (var output = Files.newOutputStream(file)) {
+			snapshot.write(output);
+		}
+		log.info("FE catalog snapshot {} written to {}: {} OS prices, {} prices", snapshot.getKey(), file, snapshot.getOsPrices().size(),
+				snapshot.getPrices().size());
+	}
+
+	/**
+	 * Parse the whole sheets into a snapshot.
+	 *
+	 * @param osContent      The OS sheet content.
+	 * @param computeContent The compute sheet content.
+	 * @return The snapshot of all the rows.
+	 * @throws IOException When a sheet cannot be parsed.
+	 */
+	public static FeCatalogSnapshot build(final byte[] osContent, final byte[] computeContent) throws IOException {
+		final var osPrices = new ArrayList<CsvOsPrice>();
+		try (var reader = toReader(osContent)) {
+			final var csvReader = new CsvOsForBeanFe(reader);
+			for (var csv = csvReader.read(); csv != null; csv = csvReader.read()) {
+				osPrices.add(csv);
+			}
+		}
+		final List<CsvPrice> prices = new ArrayList<>();
+		try (var reader = toReader(computeContent)) {
+			final var csvReader = new CsvForBeanFe(reader);
+			for (var csv = csvReader.read(); csv != null; csv = csvReader.read()) {
+				prices.add(csv);
+			}
+		}
+		return new FeCatalogSnapshot(FeCatalogSnapshot.digest(osContent, computeContent, FILTERS.getBytes(StandardCharsets.UTF_8)), osPrices,
+				prices);
+	}
+
+	/**
+	 * Return the content of the given sheet, checking its layout first.
+	 */
+	private static byte[] download(final String endpoint, final String sheet) throws IOException, URISyntaxException {
+		log.info("FE sheet download started@{} ...", endpoint);
+		try (var input = new URI(endpoint).toURL().openStream()) {
+			final var content = input.readAllBytes();
+			final var prefix = Arrays.copyOf(content, Math.min(content.length, FeSheetSchemaRegistry.READ_AHEAD));
+			log.info("FE sheet {} layout is {}", sheet, FeSheetSchemaRegistry.detect(sheet, prefix).getName());
+			return content;
+		}
+	}
+
+	private static BufferedReader toReader(final byte[] content) throws IOException {
+		return new BufferedReader(new InputStreamReader(BOMInputStream.builder().setInputStream(new ByteArrayInputStream(content)).get(),
+				StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.fe.catalog;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CancellationException;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+
+import lombok.Getter;
+
+/**
+ * Input stream counting the consumed bytes. The listener is notified each time a step of bytes is crossed and at the
+ * end of the stream, never per read call. The optional deadline is checked at the same steps.
+ */
+public class FeCountingInputStream extends FilterInputStream {
+
+	/**
+	 * Default amount of bytes between two notifications.
+	 */
+	public static final int DEFAULT_STEP = 64 * 1024;
+
+	private final LongConsumer listener;
+
+	private final long step;
+
+	private final LongSupplier deadline;
+
+	/**
+	 * The amount of consumed bytes.
+	 */
+	@Getter
+	private long count;
+
+	private long notified;
+
+	/**
+	 * Build a counting stream.
+	 *
+	 * @param input    The counted stream.
+	 * @param step     The amount of bytes between two notifications.
+	 * @param listener The listener receiving the amount of consumed bytes.
+	 */
+	public FeCountingInputStream(final InputStream input, final long step, final LongConsumer listener) {
+		this(input, step, listener, () -> 0);
+	}
+
+	/**
+	 * Build a counting stream stopping the read once the deadline is exceeded.
+	 *
+	 * @param input    The counted stream.
+	 * @param step     The amount of bytes between two notifications and deadline checks.
+	 * @param listener The listener receiving the amount of consumed bytes.
+	 * @param deadline The time limit of the read, in milliseconds since the epoch. When <code>0</code>, no limit.
+	 */
+	public FeCountingInputStream(final InputStream input, final long step, final LongConsumer listener, final LongSupplier deadline) {
+		super(input);
+		this.step = step;
+		this.listener = listener;
+		this.deadline = deadline;
+	}
+
+	@Override
+	public int read() throws IOException {
+		final var result = super.read();
+		consumed(result == -1 ? -1 : 1);
+		return result;
+	}
+
+	@Override
+	public int read(final byte[] b, final int off, final int len) throws IOException {
+		final var result = super.read(b, off, len);
+		consumed(result);
+		return result;
+	}
+
+	@Override
+	public long skip(final long n) throws IOException {
+		final var result = super.skip(n);
+		consumed(result);
+		return result;
+	}
+
+	private void consumed(final long bytes) {
+		if (bytes == -1) {
+			// EOF, notify the final count once
+			if (notified != count) {
+				notified = count;
+				listener.accept(count);
+			}
+		} else {
+			count += bytes;
+			if (count - notified >= step) {
+				notified = count;
+				listener.accept(count);
+				checkDeadline();
+			}
+		}
+	}
+
+	private void checkDeadline() {
+		final var limit = deadline.getAsLong();
+		if (limit > 0 && System.currentTimeMillis() > limit) {
+			throw new CancellationException("FE sheet read exceeded its time budget after " + count + " bytes");
+		}
+	}
+}
@@ -0,0 +1,37 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.fe.catalog;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of a FE sheet download. Disabled by default, enable <code>org.ligoj.prov.fe.Fetch</code> in
+ * the recording settings.
+ */
+@Name("org.ligoj.prov.fe.Fetch")
+@Label("FE Sheet Fetch")
+@Description("Download of a FE price sheet")
+@Category({ "Ligoj", "FE Catalog Import" })
+@Enabled(false)
+@StackTrace(false)
+class FeFetchEvent extends Event {
+
+	@Label("URL")
+	String url;
+
+	@Label("Bytes")
+	@DataAmount
+	long bytes;
+
+	@Label("Status")
+	@Description("HTTP status code, -1 when not an HTTP download")
+	int status;
+}
@@ -0,0 +1,40 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.fe.catalog;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of the transaction committing the instance prices of a region. Disabled by default, enable
+ * <code>org.ligoj.prov.fe.Flush</code> in the recording settings.
+ */
+@Name("org.ligoj.prov.fe.Flush")
+@Label("FE Import Flush")
+@Description("Commit of the FE instance prices of a region")
+@Category({ "Ligoj", "FE Catalog Import" })
+@Enabled(false)
+@StackTrace(false)
+class FeFlushEvent extends Event {
+
+	@Label("Region")
+	String region;
+
+	@Label("Rows")
+	@Description("Amount of compute rows of this region")
+	long rows;
+
+	@Label("Changed Prices")
+	@Description("Amount of existing prices whose cost changed")
+	long changed;
+
+	@Label("History")
+	@Description("Amount of written cost changes")
+	long history;
+}
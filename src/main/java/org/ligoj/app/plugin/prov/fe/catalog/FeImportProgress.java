@@ -0,0 +1,176 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.fe.catalog;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Live progress of the FE catalog import running on this application node. Each change produces a new immutable
+ * snapshot with an incremented version, so the subscribers only wait for the next version. The row and byte updates
+ * are rate-limited: they are dropped when the previous snapshot is too recent, unless they complete the work.
+ */
+@Component
+public class FeImportProgress {
+
+	/**
+	 * Minimal time between two row or byte snapshots, in milliseconds.
+	 */
+	static final long PUBLISH_INTERVAL = 250;
+
+	/**
+	 * Weight of the last throughput sample in the moving average.
+	 */
+	private static final double SMOOTHING = 0.2;
+
+	/**
+	 * Progress snapshot.
+	 *
+	 * @param version    The version of this snapshot.
+	 * @param running    When <code>true</code>, an import is running.
+	 * @param phase      The current phase. May be <code>null</code>.
+	 * @param rows       The amount of processed compute rows.
+	 * @param totalRows  The amount of compute rows to process.
+	 * @param bytes      The amount of downloaded bytes.
+	 * @param totalBytes The amount of bytes to download, <code>-1</code> when unknown.
+	 * @param eta        The estimated remaining time of the current phase, in milliseconds. <code>-1</code> when unknown.
+	 * @param throughput The moving average of the processed rows per second.
+	 * @param success    When <code>true</code>, the last completed import succeeded.
+	 */
+	public record Snapshot(long version, boolean running, String phase, long rows, long totalRows, long bytes, long totalBytes, long eta,
+			double throughput, boolean success) {
+	}
+
+	private Snapshot current = new Snapshot(0, false, null, 0, 0, 0, -1, -1, 0, false);
+
+	/**
+	 * Time of the last snapshot, in milliseconds.
+	 */
+	private long published;
+
+	/**
+	 * Processed rows of the last throughput sample.
+	 */
+	private long sampleRows;
+
+	/**
+	 * Time of the last throughput sample, in milliseconds.
+	 */
+	private long sampleTime;
+
+	/**
+	 * Moving average of the processed rows per millisecond.
+	 */
+	private double rate;
+
+	private void publish(final boolean running, final String phase, final long rows, final long totalRows, final long bytes,
+			final long totalBytes, final long eta, final boolean success) {
+		current = new Snapshot(current.version() + 1, running, phase, rows, totalRows, bytes, totalBytes, eta, rate * 1000, success);
+		published = System.currentTimeMillis();
+		notifyAll();
+	}
+
+	private boolean isThrottled(final long done, final long total) {
+		return done < total && System.currentTimeMillis() - published < PUBLISH_INTERVAL;
+	}
+
+	/**
+	 * Start a new import.
+	 */
+	public synchronized void start() {
+		rate = 0;
+		publish(true, null, 0, 0, 0, -1, -1, false);
+	}
+
+	/**
+	 * Move to the next phase.
+	 *
+	 * @param phase The new phase.
+	 */
+	public synchronized void phase(final String phase) {
+		final var c = current;
+		publish(c.running(), phase, c.rows(), c.totalRows(), c.bytes(), c.totalBytes(), -1, false);
+	}
+
+	/**
+	 * Update the processed compute rows. The remaining time is estimated from the moving average of the row throughput.
+	 * Restarting from <code>0</code> resets the throughput.
+	 *
+	 * @param rows      The amount of processed rows.
+	 * @param totalRows The amount of rows to process.
+	 */
+	public synchronized void rows(final long rows, final long totalRows) {
+		final var now = System.currentTimeMillis();
+		final var c = current;
+		if (rows == 0) {
+			sampleRows = 0;
+			sampleTime = now;
+			rate = 0;
+			publish(c.running(), c.phase(), rows, totalRows, c.bytes(), c.totalBytes(), -1, false);
+			return;
+		}
+		if (isThrottled(rows, totalRows)) {
+			return;
+		}
+		final var elapsed = now - sampleTime;
+		if (elapsed > 0 && rows > sampleRows) {
+			final var sample = (double) (rows - sampleRows) / elapsed;
+			rate = rate == 0 ? sample : SMOOTHING * sample + (1 - SMOOTHING) * rate;
+			sampleRows = rows;
+			sampleTime = now;
+		}
+		final var eta = rate > 0 ? Math.round((totalRows - rows) / rate) : -1;
+		publish(c.running(), c.phase(), rows, totalRows, c.bytes(), c.totalBytes(), eta, false);
+	}
+
+	/**
+	 * Update the downloaded bytes.
+	 *
+	 * @param bytes      The amount of downloaded bytes.
+	 * @param totalBytes The amount of bytes to download, <code>-1</code> when unknown.
+	 */
+	public synchronized void bytes(final long bytes, final long totalBytes) {
+		if (isThrottled(bytes, totalBytes == -1 ? Long.MAX_VALUE : totalBytes)) {
+			return;
+		}
+		final var c = current;
+		publish(c.running(), c.phase(), c.rows(), c.totalRows(), bytes, totalBytes, c.eta(), false);
+	}
+
+	/**
+	 * End the running import.
+	 *
+	 * @param success When <code>true</code>, the import succeeded.
+	 */
+	public synchronized void end(final boolean success) {
+		final var c = current;
+		publish(false, c.phase(), c.rows(), c.totalRows(), c.bytes(), c.totalBytes(), 0, success);
+	}
+
+	/**
+	 * Return the current snapshot.
+	 *
+	 * @return The current snapshot.
+	 */
+	public synchronized Snapshot get() {
+		return current;
+	}
+
+	/**
+	 * Wait for a snapshot newer than the given version.
+	 *
+	 * @param version The last known version.
+	 * @param timeout The maximal time to wait, in milliseconds.
+	 * @return The current snapshot, with the same version when the timeout is reached.
+	 * @throws InterruptedException When the waiting thread is interrupted.
+	 */
+	public synchronized Snapshot await(final long version, final long timeout) throws InterruptedException {
+		final var deadline = System.currentTimeMillis() + timeout;
+		var remaining = timeout;
+		while (current.version() == version && remaining > 0) {
+			wait(remaining);
+			remaining = deadline - System.currentTimeMillis();
+		}
+		return current;
+	}
+}
@@ -0,0 +1,27 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.fe.catalog;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * The catalog import has not been started because another application node holds the import lease. Nothing has been
+ * written, and the local caches are refreshed when the completion marker of the other node appears.
+ */
+public class FeImportSkippedException extends CancellationException {
+
+	/**
+	 * SID
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param node The node identifier of the catalog.
+	 */
+	public FeImportSkippedException(final String node) {
+		super("FE import of " + node + " is running on another node, skipped");
+	}
+}
@@ -0,0 +1,35 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.fe.catalog;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of a FE catalog import phase. Disabled by default, enable
+ * <code>org.ligoj.prov.fe.Phase</code> in the recording settings.
+ */
+@Name("org.ligoj.prov.fe.Phase")
+@Label("FE Import Phase")
+@Description("Phase of the FE catalog import")
+@Category({ "Ligoj", "FE Catalog Import" })
+@Enabled(false)
+@StackTrace(false)
+class FePhaseEvent extends Event {
+
+	@Label("Phase")
+	String phase;
+
+	@Label("Rows")
+	@Description("Amount of rows processed by this phase")
+	long rows;
+
+	@Label("Success")
+	boolean success;
+}
@@ -3,27 +3,50 @@
  */
 package org.ligoj.app.plugin.prov.fe.catalog;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.net.MalformedURLException;
+import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
 import org.apache.commons.io.input.BOMInputStream;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.hibernate.Session;
 import org.ligoj.app.plugin.prov.catalog.AbstractImportCatalogResource;
 import org.ligoj.app.plugin.prov.fe.ProvFePluginResource;
+import org.ligoj.app.plugin.prov.fe.dao.FePriceHistoryRepository;
+import org.ligoj.app.plugin.prov.fe.dao.FeRetiredPriceRepository;
+import org.ligoj.app.plugin.prov.fe.model.FePriceChange;
+import org.ligoj.app.plugin.prov.fe.model.FePriceHistory;
+import org.ligoj.app.plugin.prov.fe.model.FeRetiredPrice;
 import org.ligoj.app.plugin.prov.model.ImportCatalogStatus;
 import org.ligoj.app.plugin.prov.model.ProvInstancePrice;
 import org.ligoj.app.plugin.prov.model.ProvInstancePriceTerm;
@@ -37,10 +60,16 @@ import org.ligoj.app.plugin.prov.model.ProvTenancy;
 import org.ligoj.app.plugin.prov.model.Rate;
 import org.ligoj.app.plugin.prov.model.VmOs;
 import org.ligoj.bootstrap.core.INamableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 
+import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
@@ -89,10 +118,6 @@ public class FePriceImport extends AbstractImportCatalogResource {
 	 */
 	protected static final String CONF_REGIONS = ProvFePluginResource.KEY + ":regions";
 
-	/**
-	 * Pattern of the production for compute and OS. Sample <code>Paris - t2.micro (1 vCPU, 1GB RAM)</code>
-	 */
-	private static final Pattern PRODUCT_PATTERN = Pattern.compile("^\\s*([^\\s]+)\\s*-\\s*([^\\s]+)\\s*\\(.*$");
 	/**
 	 * Default pricing URL.
 	 */
@@ -117,6 +142,106 @@ public class FePriceImport extends AbstractImportCatalogResource {
 		// Nothing to extend
 	};
 
+	/**
+	 * Configuration key used for the directory of the local catalog snapshot. Default is the temporary directory.
+	 */
+	public static final String CONF_SNAPSHOT_DIR = ProvFePluginResource.KEY + ":snapshot-dir";
+
+	/**
+	 * File name of the local catalog snapshot.
+	 */
+	private static final String SNAPSHOT_FILE = "ligoj-prov-fe-catalog.bin";
+
+	/**
+	 * Class path of the catalog snapshot bundled in this plugin. Built at release time by
+	 * {@link FeCatalogSnapshotBuilder}.
+	 */
+	protected static final String BUNDLED_SNAPSHOT = PREFIX + "/catalog.bin";
+
+	/**
+	 * Maximal amount of identifiers per <code>IN</code> clause during the stale price sweep.
+	 */
+	private static final int PURGE_BATCH_SIZE = 500;
+
+	/**
+	 * Configuration key used for the connection timeout of the sheet downloads, in milliseconds.
+	 */
+	public static final String CONF_CONNECT_TIMEOUT = ProvFePluginResource.KEY + ":connect-timeout";
+
+	/**
+	 * Configuration key used for the read timeout of the sheet downloads, in milliseconds.
+	 */
+	public static final String CONF_READ_TIMEOUT = ProvFePluginResource.KEY + ":read-timeout";
+
+	/**
+	 * Configuration key used for the time budget of each import phase, in seconds. A specific phase budget is
+	 * configured with the key suffixed by <code>:</code> and the phase name. When value is <code>0</code>, no limit.
+	 */
+	public static final String CONF_PHASE_BUDGET = ProvFePluginResource.KEY + ":phase-budget";
+
+	/**
+	 * Default connection timeout, in milliseconds.
+	 */
+	private static final int DEFAULT_CONNECT_TIMEOUT = 10_000;
+
+	/**
+	 * Default read timeout, in milliseconds.
+	 */
+	private static final int DEFAULT_READ_TIMEOUT = 60_000;
+
+	/**
+	 * Amount of CSV rows installed between two cancellation checks.
+	 */
+	private static final int CANCEL_CHECK_BATCH = 100;
+
+	/**
+	 * Amount of new instance prices per JDBC batch during a bundled install.
+	 */
+	private static final int BULK_BATCH_SIZE = 100;
+
+	/**
+	 * When <code>true</code>, the running import stops at the next cancellation check.
+	 */
+	private volatile boolean cancelRequested;
+
+	/**
+	 * When <code>true</code>, an import is running on this application node.
+	 */
+	private volatile boolean running;
+
+	/**
+	 * Diagnostics of the rows rejected by the last parsing of the sheets.
+	 */
+	@Getter
+	private volatile FeRejectSink rejects = new FeRejectSink();
+
+	/**
+	 * The catalog snapshot bundled in this plugin, {@value #BUNDLED_SNAPSHOT} by default.
+	 */
+	@Setter
+	private Resource bundledSnapshot = new ClassPathResource(BUNDLED_SNAPSHOT);
+
+	@PersistenceContext(unitName = "pu")
+	private EntityManager em;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private FeCatalogLease lease;
+
+	@Autowired
+	private FeQuoteCostUpdater quoteCostUpdater;
+
+	@Autowired
+	private FePriceHistoryRepository historyRepository;
+
+	@Autowired
+	private FeRetiredPriceRepository retiredRepository;
+
+	@Autowired
+	private FeImportProgress progress;
+
 	private String getPricesApi() {
 		return configuration.get(CONF_API_PRICES, DEFAULT_API_PRICES);
 	}
@@ -130,29 +255,151 @@ public class FePriceImport extends AbstractImportCatalogResource {
 	 * Install or update prices.
 	 *
 	 * @param force When <code>true</code>, all cost attributes are update.
-	 * @throws IOException When CSV or XML files cannot be read.
+	 * @throws IOException              When CSV or XML files cannot be read.
+	 * @throws FeImportSkippedException When another application node is importing the catalog.
 	 */
 	public void install(final boolean force) throws IOException, URISyntaxException {
-		final var context = initContext(new UpdateContext(), ProvFePluginResource.KEY, force);
+		install(force, false);
+	}
+
+	/**
+	 * Install the prices from the catalog snapshot bundled in this plugin, without network access.
+	 *
+	 * @return <code>true</code> when a bundled snapshot is available and has been installed.
+	 * @throws IOException              When the bundled snapshot cannot be read.
+	 * @throws FeImportSkippedException When another application node is importing the catalog.
+	 */
+	public boolean installBundled() throws IOException, URISyntaxException {
+		if (!bundledSnapshot.exists()) {
+			return false;
+		}
+		install(false, true);
+		return true;
+	}
+
+	private void install(final boolean force, final boolean bundled) throws IOException, URISyntaxException {
+		// Only one application node imports the catalog
+		if (!lease.acquire(ProvFePluginResource.KEY)) {
+			log.info("FE catalog import is running on another node, skipped");
+			throw new FeImportSkippedException(ProvFePluginResource.KEY);
+		}
+		var success = false;
+		cancelRequested = false;
+		running = true;
+		progress.start();
+		try {
+			final var context = initContext(new UpdateContext(), ProvFePluginResource.KEY, force);
+			context.setBundled(bundled);
+			context.setRevision(lease.nextRevision(ProvFePluginResource.KEY));
+			try {
+				install(context);
+				success = true;
+			} finally {
+				endPhase(context, success);
+			}
+		} finally {
+			running = false;
+			progress.end(success);
+			lease.release(ProvFePluginResource.KEY, success);
+		}
+	}
+
+	/**
+	 * Request the cancellation of the running import. The import stops at the next check, between two phases or two row
+	 * batches, and the uncommitted changes are rolled back.
+	 *
+	 * @return <code>true</code> when an import is running on this application node.
+	 */
+	public boolean cancel() {
+		if (running) {
+			log.info("FE catalog import cancellation requested");
+			cancelRequested = true;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Stop the import when cancelled or when the time budget of the current phase is exceeded.
+	 */
+	private void checkCancel(final UpdateContext context) {
+		if (cancelRequested) {
+			throw new CancellationException("FE catalog import cancelled during phase " + context.getPhase());
+		}
+		if (context.getDeadline() > 0 && System.currentTimeMillis() > context.getDeadline()) {
+			throw new CancellationException("FE catalog import phase " + context.getPhase() + " exceeded its time budget");
+		}
+	}
+
+	/**
+	 * Move to the next step, start the time budget of this phase and extend the import lease.
+	 */
+	private void nextPhase(final UpdateContext context, final String phase) {
+		checkCancel(context);
+		endPhase(context, true);
+		final var event = new FePhaseEvent();
+		event.begin();
+		context.setPhaseEvent(event);
+		context.setPhaseRows(0);
+		nextStep(context, phase);
+		final var budget = NumberUtils.toLong(configuration.get(CONF_PHASE_BUDGET + ":" + phase, configuration.get(CONF_PHASE_BUDGET, "0")));
+		context.setPhase(phase);
+		context.setDeadline(budget > 0 ? System.currentTimeMillis() + budget * 1000 : 0);
+		lease.heartbeat(ProvFePluginResource.KEY);
+		progress.phase(phase);
+	}
+
+	/**
+	 * Release the context maps only used by the current phase and record the flight recorder event of this phase, if
+	 * any.
+	 */
+	private void endPhase(final UpdateContext context, final boolean success) {
+		if ("install-instances".equals(context.getPhase())) {
+			context.releaseInstances();
+		} else if ("install-storages".equals(context.getPhase())) {
+			context.releaseStorages();
+		} else if ("install-support".equals(context.getPhase())) {
+			context.releaseSupports();
+		}
+		final var event = context.getPhaseEvent();
+		if (event != null) {
+			context.setPhaseEvent(null);
+			event.end();
+			if (event.shouldCommit()) {
+				event.phase = context.getPhase();
+				event.rows = context.getPhaseRows();
+				event.success = success;
+				event.commit();
+			}
+		}
+	}
+
+	private void install(final UpdateContext context) throws IOException, URISyntaxException {
 		final var node = context.getNode();
 
 		// Get previous data
-		nextStep(context, "initialize");
+		nextPhase(context, "initialize");
 		context.setValidOs(Pattern.compile(configuration.get(CONF_OS, ".*"), Pattern.CASE_INSENSITIVE));
 		context.setValidInstanceType(Pattern.compile(configuration.get(CONF_ITYPE, ".*"), Pattern.CASE_INSENSITIVE));
 		context.setValidRegion(Pattern.compile(configuration.get(CONF_REGIONS, ".*")));
 		context.getMapRegionById().putAll(toMap("fe/regions.json", MAP_LOCATION));
 		context.setInstanceTypes(itRepository.findAllBy(BY_NODE, node).stream().collect(Collectors.toMap(ProvInstanceType::getCode, Function.identity())));
 		context.setPriceTerms(iptRepository.findAllBy(BY_NODE, node).stream().collect(Collectors.toMap(ProvInstancePriceTerm::getCode, Function.identity())));
-		context.setStorageTypes(stRepository.findAllBy(BY_NODE, node).stream().collect(Collectors.toMap(ProvStorageType::getCode, Function.identity())));
-		context.setPreviousStorage(
-				spRepository.findAllBy("type.node", node).stream().collect(Collectors.toMap(ProvStoragePrice::getCode, Function.identity())));
-		context.setSupportTypes(st2Repository.findAllBy(BY_NODE, node).stream().collect(Collectors.toMap(ProvSupportType::getName, Function.identity())));
-		context.setPreviousSupport(
-				sp2Repository.findAllBy("type.node", node).stream().collect(Collectors.toMap(ProvSupportPrice::getCode, Function.identity())));
+
+		// Storage and support entities are only loaded when their phase needs them
+		context.setStorageTypesLoader(
+				() -> stRepository.findAllBy(BY_NODE, node).stream().collect(Collectors.toMap(ProvStorageType::getCode, Function.identity())));
+		context.setPreviousStorageLoader(
+				() -> spRepository.findAllBy("type.node", node).stream().collect(Collectors.toMap(ProvStoragePrice::getCode, Function.identity())));
+		context.setSupportTypesLoader(
+				() -> st2Repository.findAllBy(BY_NODE, node).stream().collect(Collectors.toMap(ProvSupportType::getName, Function.identity())));
+		context.setPreviousSupportLoader(
+				() -> sp2Repository.findAllBy("type.node", node).stream().collect(Collectors.toMap(ProvSupportPrice::getCode, Function.identity())));
 		context.setRegions(locationRepository.findAllBy(BY_NODE, context.getNode()).stream().filter(r -> isEnabledRegion(context, r))
 				.collect(Collectors.toMap(INamableBean::getName, Function.identity())));
 		context.setPrevious(ipRepository.findAllBy("term.node", node).stream().collect(Collectors.toMap(ProvInstancePrice::getCode, Function.identity())));
+		context.setRetired(retiredRepository.findAll().stream().collect(Collectors.toMap(FeRetiredPrice::getCode, Function.identity())));
+		context.setPhaseRows(context.getPrevious().size());
 
 		// Term definitions
 		final var terms = toMap("fe/terms.json", MAP_TERMS);
@@ -168,27 +415,120 @@ public class FePriceImport extends AbstractImportCatalogResource {
 
 		// Fetch the remote prices stream and build the price objects
 		// Instances
-		nextStep(context, "install-instances");
+		nextPhase(context, "install-instances");
 		// Install the specific prices
 
-		// Read OS prices
-		fetchOSPrices(context, StringUtils.removeEnd(getPricesApi(), "/") + "/prices/pricing-os.csv");
+		// Read OS and instance prices, nothing is written until the whole catalog is read
+		final var catalog = fetchCatalog(context);
+		indexOsPrices(context, catalog.getOsPrices());
+		final var regions = groupByRegion(context, catalog.getPrices());
 
-		// Read and install instance prices
-		installInstancesPrices(context, StringUtils.removeEnd(getPricesApi(), "/") + "/prices/pricing-compute.csv");
+		// Resume after the last region completed by a failed import of the same catalog
+		final var checkpoint = lease.getCheckpoint(ProvFePluginResource.KEY, catalog.getKey());
+		final var todo = checkpoint == null ? regions : regions.tailMap(checkpoint, false);
+		if (checkpoint != null) {
+			log.info("FE catalog import resumed after region {}: {}/{} regions remaining", checkpoint, todo.size(), regions.size());
+		}
+
+		// Install each region in its own transaction. The changes are recorded with the revision of this import, and stay
+		// hidden from the readers of this plugin until the revision is published. The withdrawn prices are only recorded:
+		// they are deleted with the publication.
+		final var transaction = new TransactionTemplate(transactionManager);
+		final long totalRows = todo.values().stream().mapToInt(List::size).sum();
+		var rows = 0L;
+		progress.rows(rows, totalRows);
+		for (final var entry : todo.entrySet()) {
+			final var region = entry.getKey();
+			final var csvPrices = entry.getValue();
+			final var done = rows;
+			final var changed = context.getChangedPrices().size();
+			final var flush = new FeFlushEvent();
+			flush.begin();
+			transaction.executeWithoutResult(s -> {
+				final var seen = context.getSeenPrices().size();
+				for (var i = 0; i < csvPrices.size(); i++) {
+					if (i % CANCEL_CHECK_BATCH == 0) {
+						checkCancel(context);
+						progress.rows(done + i, totalRows);
+					}
+					installInstancePrices(context, csvPrices.get(i));
+				}
+				checkCancel(context);
+				bulkInsert(context);
+				recordChanges(context);
+				if (context.getSeenPrices().size() == seen) {
+					// No price found for this region, surely a parse issue: do not wipe the previous prices
+					log.warn("FE price sweep of region {} skipped, no price found in the remote catalog", region);
+				} else {
+					purgeInstancePrices(context, p -> p.getLocation().getName().equals(region));
+				}
+
+				// Bulk write of the cost changes, committed with the prices of this region
+				historyRepository.saveAll(context.getHistory());
+				flush.history = context.getHistory().size();
+				context.getHistory().clear();
+
+				// A lost lease rolls back this region, another node is importing
+				lease.checkpoint(ProvFePluginResource.KEY, catalog.getKey(), region);
+				lease.heartbeat(ProvFePluginResource.KEY);
+			});
+			flush.end();
+			if (flush.shouldCommit()) {
+				flush.region = region;
+				flush.rows = csvPrices.size();
+				flush.changed = context.getChangedPrices().size() - changed;
+				flush.commit();
+			}
+
+			rows += csvPrices.size();
+			progress.rows(rows, totalRows);
+			context.setPhaseRows(rows);
+		}
+
+		final var published = lease.getPublished(ProvFePluginResource.KEY);
+		if (checkpoint != null) {
+			// The prices changed by the regions of the interrupted import, not yet used to re-cost the quotes
+			context.getChangedPrices().addAll(em.createQuery("SELECT p.id FROM ProvInstancePrice p WHERE p.code IN (SELECT h.code FROM FePriceHistory h"
+					+ " WHERE h.revision > :published AND h.kind = :kind)", Integer.class).setParameter("published", published)
+					.setParameter("kind", FePriceChange.UPDATED).getResultList());
+		}
+
+		// Switch-over: remove the prices of the regions no more available and the withdrawn prices, then publish the
+		// revision in the same transaction. A resumed import also removes the withdrawn prices of the interrupted one.
+		transaction.executeWithoutResult(s -> {
+			if (regions.isEmpty()) {
+				// Empty catalog, surely a parse issue: do not wipe the previous prices
+				log.warn("FE price sweep skipped, no price found in the remote catalog");
+			} else {
+				purgeInstancePrices(context, p -> !regions.containsKey(p.getLocation().getName()));
+			}
+			historyRepository.saveAll(context.getHistory());
+			context.getHistory().clear();
+			deleteWithdrawnPrices(context, checkpoint == null ? context.getRevision() - 1 : published);
+			historyRepository.saveAll(context.getHistory());
+			context.getHistory().clear();
+			lease.publish(ProvFePluginResource.KEY);
+		});
+		log.info("FE OnDemand/Reserved import finished: {} prices ({})", context.getPrices().size(), String.format("%+d", context.getPrices().size()));
+
+		// Re-cost once the quotes using a changed price, whatever the amount of regions of these prices
+		quoteCostUpdater.update(context.getChangedPrices());
 
 		// Storages
-		nextStep(context, "install-storages");
+		nextPhase(context, "install-storages");
 		// installStorage(context);
 
 		// Support
-		nextStep(context, "install-support");
-		csvForBean.toBean(ProvSupportType.class, PREFIX + "/prov-support-type.csv").forEach(t -> {
+		nextPhase(context, "install-support");
+		final var supportTypes = csvForBean.toBean(ProvSupportType.class, PREFIX + "/prov-support-type.csv");
+		supportTypes.forEach(t -> {
 			installSupportType(context, t.getCode(), t);
 		});
-		csvForBean.toBean(ProvSupportPrice.class, PREFIX + "/prov-support-price.csv").forEach(t -> {
+		final var supportPrices = csvForBean.toBean(ProvSupportPrice.class, PREFIX + "/prov-support-price.csv");
+		supportPrices.forEach(t -> {
 			installSupportPrice(context, t.getCode(), t);
 		});
+		context.setPhaseRows(supportTypes.size() + supportPrices.size());
 	}
 
 	/**
@@ -233,72 +573,318 @@ public class FePriceImport extends AbstractImportCatalogResource {
 	}
 
 	/**
-	 * Install a new instance price as needed.
+	 * Download the sheets and return the parsed catalog. The parsing is skipped when the local snapshot has been built
+	 * from the same sheets.
 	 */
-	private void fetchOSPrices(final UpdateContext context, final String endpoint) throws MalformedURLException, IOException, URISyntaxException {
-		// Track the created instance to cache partial costs
-		log.info("FE OS import started@{} ...", endpoint);
+	private FeCatalogSnapshot fetchCatalog(final UpdateContext context) throws IOException, URISyntaxException {
+		if (context.isBundled()) {
+			try (var input = bundledSnapshot.getInputStream()) {
+				final var bundled = FeCatalogSnapshot.read(input);
+				if (bundled == null) {
+					throw new IOException("Unsupported version of the bundled FE catalog snapshot");
+				}
+				log.info("FE bundled catalog snapshot {} is used", bundled.getKey());
+				return bundled;
+			}
+		}
+		final var api = StringUtils.removeEnd(getPricesApi(), "/");
+		final var osContent = download(context, api + "/prices/pricing-os.csv", "os", 0);
+		checkCancel(context);
+		final var computeContent = download(context, api + "/prices/pricing-compute.csv", "compute", osContent.length);
+		checkCancel(context);
+		// The filters are part of the key since the rows of the disabled regions, types and OS are not parsed
+		final var filters = String.join("|", context.getValidRegion().pattern(), context.getValidInstanceType().pattern(),
+				context.getValidOs().pattern());
+		final var key = FeCatalogSnapshot.digest(osContent, computeContent, filters.getBytes(StandardCharsets.UTF_8));
+		final var file = getSnapshotFile();
+		final var previous = readSnapshot(file);
+		if (previous != null && previous.getKey().equals(key)) {
+			log.info("FE catalog snapshot {} is up to date, parsing skipped", key);
+			return previous;
+		}
+		final var parseRejects = new FeRejectSink();
+		final var snapshot = new FeCatalogSnapshot(key, readOSPrices(context, osContent, parseRejects),
+				readInstancesPrices(context, computeContent, parseRejects));
+		rejects = parseRejects;
+		log.info("FE sheets parse finished, {} distinct products, rejected rows: {}", context.getSymbols().size(), parseRejects.getCounts());
+		writeSnapshot(file, snapshot);
+		return snapshot;
+	}
 
-		final var result = new HashMap<String, Map<String, Map<VmOs, Map<String, CsvOsPrice>>>>();
-		context.setOsPrices(result);
+	/**
+	 * Return the whole content of the given remote sheet. The downloaded bytes are reported to the progress while
+	 * reading, with the expected size when the <code>Content-Length</code> is known. The layout of the sheet is checked
+	 * from its first bytes, so an unknown layout fails before the whole sheet is downloaded. The time budget of the
+	 * current phase is checked while reading.
+	 *
+	 * @param sheet  The sheet name.
+	 * @param offset The amount of bytes already downloaded by the previous sheets.
+	 */
+	private byte[] download(final UpdateContext context, final String endpoint, final String sheet, final long offset)
+			throws IOException, URISyntaxException {
+		log.info("FE sheet download started@{} ...", endpoint);
+		final var connection = new URI(endpoint).toURL().openConnection();
+		connection.setConnectTimeout(NumberUtils.toInt(configuration.get(CONF_CONNECT_TIMEOUT, String.valueOf(DEFAULT_CONNECT_TIMEOUT))));
+		connection.setReadTimeout(NumberUtils.toInt(configuration.get(CONF_READ_TIMEOUT, String.valueOf(DEFAULT_READ_TIMEOUT))));
+		final var event = new FeFetchEvent();
+		event.begin();
+		final var length = connection.getContentLengthLong();
+		final var total = length == -1 ? -1 : offset + length;
+		try (var buffered = new BufferedInputStream(connection.getInputStream());
+				var input = new FeCountingInputStream(buffered, FeCountingInputStream.DEFAULT_STEP, count -> progress.bytes(offset + count, total),
+						context::getDeadline)) {
+			buffered.mark(FeSheetSchemaRegistry.READ_AHEAD);
+			final var schema = FeSheetSchemaRegistry.detect(sheet, buffered.readNBytes(FeSheetSchemaRegistry.READ_AHEAD));
+			buffered.reset();
+			log.info("FE sheet {} layout is {}", sheet, schema.getName());
+			final var content = input.readAllBytes();
+			progress.bytes(offset + content.length, offset + content.length);
+			event.end();
+			if (event.shouldCommit()) {
+				event.url = endpoint;
+				event.bytes = content.length;
+				event.status = connection instanceof HttpURLConnection http ? http.getResponseCode() : -1;
+				event.commit();
+			}
+			return content;
+		}
+	}
+
+	private BufferedReader toReader(final byte[] content) throws IOException {
+		return new BufferedReader(new InputStreamReader(BOMInputStream.builder().setInputStream(new ByteArrayInputStream(content)).get(),
+				StandardCharsets.UTF_8));
+	}
+
+	private Path getSnapshotFile() {
+		return Path.of(configuration.get(CONF_SNAPSHOT_DIR, System.getProperty("java.io.tmpdir")), SNAPSHOT_FILE);
+	}
+
+	/**
+	 * Return the local snapshot, or <code>null</code> when not available.
+	 */
+	private FeCatalogSnapshot readSnapshot(final Path file) {
+		if (Files.exists(file)) {
+			try (var input = Files.newInputStream(file)) {
+				return FeCatalogSnapshot.read(input);
+			} catch (final IOException e) {
+				log.warn("FE catalog snapshot {} cannot be read, ignored", file, e);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Replace the local snapshot. A failure is not blocking, the next import will parse the sheets again.
+	 */
+	private void writeSnapshot(final Path file, final FeCatalogSnapshot snapshot) {
+		try {
+			Files.createDirectories(file.getParent());
+			final var tmp = Files.createTempFile(file.getParent(), SNAPSHOT_FILE, ".tmp");
+			try (var output = Files.newOutputStream(tmp)) {
+				snapshot.write(output);
+			}
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (final IOException e) {
+			log.warn("FE catalog snapshot {} cannot be written", file, e);
+		}
+	}
+
+	/**
+	 * Return the filter of the product cells. The rows of the disabled regions and types are dropped before the bean
+	 * binding. Unparsable products are rejected by the parser before this filter.
+	 */
+	private Predicate<String> newProductFilter(final UpdateContext context) {
+		return product -> {
+			final var matcher = AbstractFeCsvReader.PRODUCT_PATTERN.matcher(product);
+			final var symbols = context.getSymbols();
+			return !matcher.find() || context.getValidRegion().matcher(getLocationFromName(context, symbols.intern(matcher.group(1)))).matches()
+					&& isEnabledType(context, symbols.intern(matcher.group(2)));
+		};
+	}
 
-		// Get the remote prices stream
-		try (var reader = new BufferedReader(new InputStreamReader(BOMInputStream.builder().setInputStream(new URI(endpoint).toURL().openStream()).get()))) {
+	/**
+	 * Read the OS prices of the enabled regions, types and OS.
+	 */
+	private List<CsvOsPrice> readOSPrices(final UpdateContext context, final byte[] content, final FeRejectSink rejects) throws IOException {
+		final var result = new ArrayList<CsvOsPrice>();
+		try (var reader = toReader(content)) {
 			// Pipe to the CSV reader
-			final var csvReader = new CsvOsForBeanFe(reader);
+			final var csvReader = new CsvOsForBeanFe(reader, newProductFilter(context), os -> context.getValidOs().matcher(os.name()).matches(), rejects,
+					context.getSymbols());
 
 			// Build the AWS instance prices from the CSV
 			var csv = csvReader.read();
 			while (csv != null) {
-				// Extract the instance type from the product
-				// Sample : Paris - t2.micro (1 vCPU, 1GB RAM)
-				final var matcher = PRODUCT_PATTERN.matcher(csv.getProduct());
-				if (!matcher.find()) {
-					// Ignore this line, maybe a CSV header
-					return;
-				}
-				csv.setLocation(matcher.group(1));
-				csv.setType(matcher.group(2));
-
-				// Install the location name as needed
-				// Install the type name as needed
-				// Install the OS as needed
-				// Install the Software as needed
-				result.computeIfAbsent(csv.getLocation(), o -> new HashMap<>()).computeIfAbsent(csv.getType(), o -> new HashMap<>())
-						.computeIfAbsent(csv.getOs(), o -> new HashMap<>()).put(Objects.toString(csv.getSoftware(), NO_SOFTWARE), csv);
+				result.add(csv);
 
 				// Read the next one
 				csv = csvReader.read();
 			}
 		} finally {
 			// Report
-			log.info("FE OS import finished: {} prices ({})", context.getPrices().size(), String.format("%+d", context.getPrices().size()));
+			log.info("FE OS parse finished: {} rows", result.size());
 		}
+		return result;
 	}
 
 	/**
-	 * Install a new instance price as needed.
+	 * Index the OS prices by location, type, OS and software.
 	 */
-	private void installInstancesPrices(final UpdateContext context, final String endpoint) throws MalformedURLException, IOException, URISyntaxException {
-		// Track the created instance to cache partial costs
-		log.info("FE OnDemand/Reserved import started@{} ...", endpoint);
+	private void indexOsPrices(final UpdateContext context, final List<CsvOsPrice> csvPrices) {
+		final var result = new HashMap<String, Map<String, Map<VmOs, Map<String, CsvOsPrice>>>>();
+		context.setOsPrices(result);
+		for (final var csv : csvPrices) {
+			// Extract the instance type from the product
+			// Sample : Paris - t2.micro (1 vCPU, 1GB RAM)
+			final var matcher = AbstractFeCsvReader.PRODUCT_PATTERN.matcher(csv.getProduct());
+			if (!matcher.find()) {
+				// Ignore this row only, already reported by the parser
+				continue;
+			}
+			if (csv.getOs() != null && !context.getValidOs().matcher(csv.getOs().name()).matches()) {
+				// Disabled OS, not filtered by a bundled snapshot
+				continue;
+			}
+			csv.setLocation(context.getSymbols().intern(matcher.group(1)));
+			csv.setType(context.getSymbols().intern(matcher.group(2)));
+
+			// Install the location name as needed
+			// Install the type name as needed
+			// Install the OS as needed
+			// Install the Software as needed
+			result.computeIfAbsent(csv.getLocation(), o -> new HashMap<>()).computeIfAbsent(csv.getType(), o -> new HashMap<>())
+					.computeIfAbsent(csv.getOs(), o -> new HashMap<>()).put(Objects.toString(csv.getSoftware(), NO_SOFTWARE), csv);
+		}
+	}
 
-		// Get the remote prices stream
-		try (var reader = new BufferedReader(new InputStreamReader(BOMInputStream.builder().setInputStream(new URI(endpoint).toURL().openStream()).get()))) {
+	/**
+	 * Read the instance prices of the enabled regions and types without installing them.
+	 */
+	private List<CsvPrice> readInstancesPrices(final UpdateContext context, final byte[] content, final FeRejectSink rejects)
+			throws IOException {
+		final var result = new ArrayList<CsvPrice>();
+		try (var reader = toReader(content)) {
 			// Pipe to the CSV reader
-			final var csvReader = new CsvForBeanFe(reader);
+			final var csvReader = new CsvForBeanFe(reader, newProductFilter(context), rejects, context.getSymbols());
 
 			// Build the AWS instance prices from the CSV
 			var csv = csvReader.read();
 			while (csv != null) {
-				installInstancePrices(context, csv);
+				result.add(csv);
 
 				// Read the next one
 				csv = csvReader.read();
 			}
 		} finally {
 			// Report
-			log.info("FE OnDemand/Reserved import finished: {} prices ({})", context.getPrices().size(), String.format("%+d", context.getPrices().size()));
+			log.info("FE OnDemand/Reserved parse finished: {} rows", result.size());
+		}
+		return result;
+	}
+
+	/**
+	 * Group the compute rows by region name, sorted by name so a resumed import processes the regions in the same
+	 * order.
+	 */
+	private TreeMap<String, List<CsvPrice>> groupByRegion(final UpdateContext context, final List<CsvPrice> csvPrices) {
+		final var result = new TreeMap<String, List<CsvPrice>>();
+		for (final var csv : csvPrices) {
+			final var matcher = AbstractFeCsvReader.PRODUCT_PATTERN.matcher(csv.getProduct());
+			if (matcher.find()) {
+				result.computeIfAbsent(getLocationFromName(context, context.getSymbols().intern(matcher.group(1))), r -> new ArrayList<>()).add(csv);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Withdraw the previous instance prices of the given scope not found in the remote catalog. Only the enabled regions,
+	 * types and OS are considered. Prices still used by a quote are retired: they are kept untouched to keep the quotes
+	 * valid, and marked as retired so they are no more proposed. The other ones are recorded as removed, and deleted by
+	 * {@link #deleteWithdrawnPrices(UpdateContext, long)} when the revision is published.
+	 */
+	private void purgeInstancePrices(final UpdateContext context, final Predicate<ProvInstancePrice> scope) {
+		final var unseen = context.getPrevious().values().stream()
+				.filter(p -> p.getId() != null && !context.getSeenPrices().contains(p.getCode()) && scope.test(p)
+						&& isEnabledRegion(context, p.getLocation()) && isEnabledType(context, p.getType().getCode())
+						&& context.getValidOs().matcher(p.getOs().name()).matches())
+				.toList();
+		final var used = findUsed(unseen);
+		final var newlyRetired = retire(context, unseen, used);
+		final var removed = unseen.stream().filter(p -> !used.contains(p.getId())).toList();
+		removed.forEach(p -> addHistory(context, p, FePriceChange.REMOVED));
+		log.info("FE price sweep finished: {} removed, {} newly retired, {} retired", removed.size(), newlyRetired, used.size());
+	}
+
+	/**
+	 * Return the identifiers of the given prices still used by a quote.
+	 */
+	private Set<Integer> findUsed(final List<ProvInstancePrice> prices) {
+		final var ids = prices.stream().map(ProvInstancePrice::getId).toList();
+		final var used = new HashSet<Integer>();
+		for (var i = 0; i < ids.size(); i += PURGE_BATCH_SIZE) {
+			used.addAll(em.createQuery("SELECT DISTINCT qi.price.id FROM ProvQuoteInstance qi WHERE qi.price.id IN :ids", Integer.class)
+					.setParameter("ids", ids.subList(i, Math.min(ids.size(), i + PURGE_BATCH_SIZE))).getResultList());
+		}
+		return used;
+	}
+
+	/**
+	 * Mark the used prices not yet retired, and return the amount of newly retired prices.
+	 */
+	private int retire(final UpdateContext context, final List<ProvInstancePrice> prices, final Set<Integer> used) {
+		var newlyRetired = 0;
+		for (final var price : prices) {
+			if (used.contains(price.getId()) && !context.getRetired().containsKey(price.getCode())) {
+				final var retired = new FeRetiredPrice();
+				retired.setCode(price.getCode());
+				retired.setRetired(context.getStarted());
+				retired.setRevision(context.getRevision());
+				context.getRetired().put(price.getCode(), retiredRepository.save(retired));
+				addHistory(context, price, FePriceChange.RETIRED);
+				newlyRetired++;
+			}
+		}
+		return newlyRetired;
+	}
+
+	/**
+	 * Delete the prices recorded as removed by the revisions after the given one, at the publication of the current
+	 * revision. The prices used by a quote since their removal are retired instead.
+	 */
+	private void deleteWithdrawnPrices(final UpdateContext context, final long since) {
+		final var removed = new HashSet<>(em
+				.createQuery("SELECT DISTINCT h.code FROM FePriceHistory h WHERE h.revision > :since AND h.kind = :kind", String.class)
+				.setParameter("since", since).setParameter("kind", FePriceChange.REMOVED).getResultList());
+		final var withdrawn = context.getPrevious().values().stream().filter(p -> p.getId() != null && removed.contains(p.getCode())).toList();
+		final var used = findUsed(withdrawn);
+		retire(context, withdrawn, used);
+
+		// Bulk delete the other ones, and their retirement marker
+		final var deleted = withdrawn.stream().filter(p -> !used.contains(p.getId())).toList();
+		for (var i = 0; i < deleted.size(); i += PURGE_BATCH_SIZE) {
+			final var batch = deleted.subList(i, Math.min(deleted.size(), i + PURGE_BATCH_SIZE));
+			ipRepository.deleteAllByIdInBatch(batch.stream().map(ProvInstancePrice::getId).toList());
+			final var codes = batch.stream().map(ProvInstancePrice::getCode).filter(context.getRetired()::containsKey).toList();
+			if (!codes.isEmpty()) {
+				retiredRepository.deleteAllByCode(codes);
+				codes.forEach(context.getRetired()::remove);
+			}
+		}
+		final var deletedIds = deleted.stream().map(ProvInstancePrice::getId).collect(Collectors.toSet());
+		context.getPrevious().values().removeIf(p -> deletedIds.contains(p.getId()));
+		log.info("FE withdrawn prices deleted: {} deleted, {} retired", deleted.size(), used.size());
+	}
+
+	/**
+	 * Remove the retirement marker of a price found again in the remote catalog. The restoration is recorded, so the price
+	 * stays hidden until the revision is published.
+	 */
+	private void restore(final UpdateContext context, final ProvInstancePrice price) {
+		final var retired = context.getRetired().remove(price.getCode());
+		if (retired != null) {
+			retiredRepository.deleteById(retired.getId());
+			addHistory(context, price, FePriceChange.RESTORED);
 		}
 	}
 
@@ -314,21 +900,21 @@ public class FePriceImport extends AbstractImportCatalogResource {
 	 * Install all instance price as needed. Each CSV entry contains several term prices.
 	 */
 	private void installInstancePrices(final UpdateContext context, final CsvPrice price) {
-		final var matcher = PRODUCT_PATTERN.matcher(price.getProduct());
+		final var matcher = AbstractFeCsvReader.PRODUCT_PATTERN.matcher(price.getProduct());
 		if (!matcher.find()) {
 			// Ignore this line, maybe a CSV header
 			return;
 		}
 
 		// Install location
-		final var humanName = matcher.group(1);
+		final var humanName = context.getSymbols().intern(matcher.group(1));
 		final var location = installRegion(context, getLocationFromName(context, humanName));
 		if (location == null) {
 			// Unsupported region, or invalid row -> ignore
 			return;
 		}
 
-		final var typeName = matcher.group(2);
+		final var typeName = context.getSymbols().intern(matcher.group(2));
 		final var type = installInstanceType(context, typeName, price);
 		if (type == null) {
 			// Unsupported type, or invalid row -> ignore
@@ -404,15 +990,23 @@ public class FePriceImport extends AbstractImportCatalogResource {
 
 	private void installInstancePrice(final UpdateContext context, final ProvLocation region, final ProvInstancePriceTerm term, final VmOs os,
 			final String software, final ProvInstanceType type, final Double monthlyCost, final Double initialCost) {
-		// Build the code string
+		// Build the code string, the software variants of an OS are distinct prices
+		final var code = String.join("/", region.getName(), term.getCode(), type.getCode(), os.name()) + (software == null ? "" : "/" + software);
+		final var price = context.getPrevious().computeIfAbsent(code.toLowerCase(), c -> {
+			// New instance price (not update mode)
+			final var newPrice = new ProvInstancePrice();
+			newPrice.setCode(c);
+			return newPrice;
+		});
+		context.getSeenPrices().add(price.getCode());
+		restore(context, price);
+		if (!context.isForce() && isUnchanged(price, region, term, os, software, type, round3Decimals(monthlyCost), initialCost)) {
+			// Unchanged price, skip the merge
+			return;
+		}
 
-		final var price = context.getPrevious().computeIfAbsent(String.join("/", region.getName(), term.getCode(), type.getCode(), os.name()).toLowerCase(),
-				code -> {
-					// New instance price (not update mode)
-					final var newPrice = new ProvInstancePrice();
-					newPrice.setCode(code);
-					return newPrice;
-				});
+		// Keep the state before the first write, compared with the final state at the region commit
+		context.getWrittenPrices().putIfAbsent(price.getCode(), new UpdateContext.PriceState(price.getId(), price.getCost(), price.getInitialCost()));
 
 		// Save the price as needed
 		copyAsNeeded(context, price, p -> {
@@ -430,8 +1024,87 @@ public class FePriceImport extends AbstractImportCatalogResource {
 			price.setInitialCost(initialCost);
 			price.setCost(cR);
 			price.setCostPeriod(round3Decimals(ObjectUtils.defaultIfNull(price.getInitialCost(), 0d) + c * price.getTerm().getPeriod()));
-		}, ipRepository::save);
+		}, p -> {
+			if (context.isBundled() && p.getId() == null) {
+				// Inserted by batches at the region commit
+				context.getPendingPrices().add(p);
+			} else {
+				ipRepository.save(p);
+			}
+		});
+	}
 
+	/**
+	 * Insert the new instance prices of the current region by JDBC batches of {@value #BULK_BATCH_SIZE} statements.
+	 */
+	private void bulkInsert(final UpdateContext context) {
+		final var pending = context.getPendingPrices();
+		if (pending.isEmpty()) {
+			return;
+		}
+		final var session = em.unwrap(Session.class);
+		final var batchSize = session.getJdbcBatchSize();
+		session.setJdbcBatchSize(BULK_BATCH_SIZE);
+		try {
+			for (var i = 0; i < pending.size(); i++) {
+				em.persist(pending.get(i));
+				if ((i + 1) % BULK_BATCH_SIZE == 0) {
+					em.flush();
+				}
+			}
+			em.flush();
+		} finally {
+			session.setJdbcBatchSize(batchSize);
+			pending.clear();
+		}
+	}
+
+	/**
+	 * Record the changes of the instance prices written in the current region. The state before the first write of this
+	 * import is compared with the final state, so a price is recorded once, and only when its cost really changed.
+	 */
+	private void recordChanges(final UpdateContext context) {
+		context.getWrittenPrices().forEach((code, before) -> {
+			final var price = context.getPrevious().get(code);
+			if (before.id() == null) {
+				// New price
+				addHistory(context, price, FePriceChange.CREATED);
+			} else if (!Objects.equals(before.cost(), price.getCost()) || !Objects.equals(before.initialCost(), price.getInitialCost())) {
+				// Existing price possibly used by a quote
+				context.getChangedPrices().add(before.id());
+				addHistory(context, price, FePriceChange.UPDATED);
+			}
+		});
+		context.getWrittenPrices().clear();
+	}
+
+	/**
+	 * Record a price change, written with the prices of the current region.
+	 */
+	private void addHistory(final UpdateContext context, final ProvInstancePrice price, final FePriceChange kind) {
+		final var history = new FePriceHistory();
+		history.setCode(price.getCode());
+		history.setImported(context.getStarted());
+		history.setRevision(context.getRevision());
+		history.setKind(kind);
+		history.setCost(price.getCost());
+		history.setInitialCost(price.getInitialCost());
+		context.getHistory().add(history);
+	}
+
+	/**
+	 * Return <code>true</code> when the stored price already has the given attributes and costs. The price is the
+	 * in-memory entity, so a price written earlier by this import is compared with its last written state. This exact
+	 * comparison replaces a 64-bit row fingerprint: the preload already holds these attributes, so a fingerprint saves no
+	 * read, and a hash collision would silently skip a changed price.
+	 */
+	private boolean isUnchanged(final ProvInstancePrice price, final ProvLocation region, final ProvInstancePriceTerm term, final VmOs os,
+			final String software, final ProvInstanceType type, final double cost, final Double initialCost) {
+		return price.getId() != null && price.getOs() == os && price.getTenancy() == ProvTenancy.SHARED
+				&& Objects.equals(price.getSoftware(), software) && Objects.equals(price.getCost(), cost)
+				&& Objects.equals(price.getInitialCost(), initialCost) && price.getPeriod() == term.getPeriod()
+				&& price.getLocation().getName().equals(region.getName()) && price.getTerm().getCode().equals(term.getCode())
+				&& price.getType().getCode().equals(type.getCode());
 	}
 
 	/**
@@ -0,0 +1,263 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.fe.catalog;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+import org.ligoj.app.plugin.prov.fe.ProvFePluginResource;
+import org.ligoj.app.plugin.prov.fe.dao.FePriceHistoryRepository;
+import org.ligoj.app.plugin.prov.fe.model.FePriceHistory;
+import org.ligoj.app.plugin.prov.model.VmOs;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * In-memory instance price index of the FE catalog. The catalog is small and static between two imports, so the
+ * requirement based lookups are resolved without SQL. Prices are grouped by location, OS and term. For each group, the
+ * cheapest price is materialized for each CPU and RAM requirement bucket, the buckets being the distinct CPU and RAM
+ * values of the group. Only the prices without software are indexed, the retired prices are excluded. The prices are
+ * indexed at the published revision, the changes committed by an unfinished import are hidden.<br>
+ * The index is invalidated when the completion marker of the import lease changes, so an import completed by another
+ * application node is also taken into account.
+ */
+@Component
+@Slf4j
+public class FePriceIndex {
+
+	/**
+	 * Indexed price.
+	 *
+	 * @param id   The price identifier.
+	 * @param code The price code.
+	 * @param cpu  The CPU of the related instance type.
+	 * @param ram  The RAM of the related instance type, in MiB.
+	 * @param cost The monthly cost.
+	 */
+	public record Entry(int id, String code, double cpu, int ram, double cost) {
+	}
+
+	/**
+	 * Order of the prices, the smallest CPU then the smallest RAM is preferred between prices having the same cost.
+	 */
+	private static final Comparator<Entry> BY_COST = Comparator.comparingDouble(Entry::cost).thenComparingDouble(Entry::cpu)
+			.thenComparingInt(Entry::ram).thenComparing(Entry::code);
+
+	/**
+	 * Cheapest prices of a location/OS/term group.
+	 *
+	 * @param cpus     The distinct CPU values, sorted.
+	 * @param rams     The distinct RAM values, sorted.
+	 * @param cheapest The cheapest price having at least <code>cpus[i]</code> CPU and <code>rams[j]</code> RAM, by
+	 *                 <code>[i][j]</code>. May contain <code>null</code> when no price fits.
+	 */
+	private record Buckets(double[] cpus, int[] rams, Entry[][] cheapest) {
+	}
+
+	/**
+	 * Minimal delay between two checks of the import completion marker, in milliseconds.
+	 */
+	private static final long CHECK_INTERVAL = 30_000;
+
+	@PersistenceContext(unitName = "pu")
+	private EntityManager em;
+
+	@Autowired
+	private FeCatalogLease lease;
+
+	@Autowired
+	private FePriceHistoryRepository historyRepository;
+
+	/**
+	 * Completion marker of the import the index is built from.
+	 */
+	private volatile Instant indexed;
+
+	/**
+	 * Next check of the import completion marker.
+	 */
+	private volatile long nextCheck;
+
+	/**
+	 * Cheapest prices by location/OS/term. When <code>null</code>, the index is stale and is rebuilt from the database on
+	 * the next lookup.
+	 */
+	private volatile Map<String, Buckets> index;
+
+	private static String toKey(final String location, final VmOs os, final String term) {
+		return String.join("/", location, os.name(), term).toLowerCase();
+	}
+
+	/**
+	 * Mark the index as stale.
+	 */
+	public void invalidate() {
+		index = null;
+	}
+
+	/**
+	 * Build the index from the database.
+	 */
+	public synchronized void build() {
+		index = load();
+	}
+
+	/**
+	 * Return the current index, loaded from the database when stale.
+	 */
+	private synchronized Map<String, Buckets> getIndex() {
+		var current = index;
+		if (current == null) {
+			current = load();
+			index = current;
+		}
+		return current;
+	}
+
+	private Map<String, Buckets> load() {
+		final var start = System.currentTimeMillis();
+		indexed = lease.getCompleted(ProvFePluginResource.KEY);
+		nextCheck = start + CHECK_INTERVAL;
+		final var groups = new HashMap<String, List<Entry>>();
+		final var published = lease.getPublished(ProvFePluginResource.KEY);
+
+		// The cost changes of an unpublished import are replaced by the published costs
+		final var costs = historyRepository.findPublishedCosts(published).stream()
+				.collect(Collectors.toMap(FePriceHistory::getCode, FePriceHistory::getCost, (a, b) -> a));
+		em.createQuery("SELECT p.id, p.code, p.location.name, p.os, p.term.code, p.type.cpu, p.type.ram, p.cost FROM ProvInstancePrice p"
+				+ " WHERE p.term.node.id = :node AND p.software IS NULL AND " + FePriceHistoryRepository.PUBLISHED, Object[].class)
+				.setParameter("node", ProvFePluginResource.KEY).setParameter("published", published)
+				.getResultList().forEach(r -> groups.computeIfAbsent(toKey((String) r[2], (VmOs) r[3], (String) r[4]), k -> new ArrayList<>())
+						.add(new Entry((Integer) r[0], (String) r[1], ((Number) r[5]).doubleValue(), ((Number) r[6]).intValue(),
+								costs.getOrDefault((String) r[1], ((Number) r[7]).doubleValue()))));
+		final var result = new HashMap<String, Buckets>();
+		groups.forEach((k, v) -> result.put(k, toBuckets(v)));
+		log.info("FE price index built: {} groups in {}ms", result.size(), System.currentTimeMillis() - start);
+		return result;
+	}
+
+	/**
+	 * Return the cheapest price matching to the requirements.
+	 *
+	 * @param location The location name.
+	 * @param os       The requested OS.
+	 * @param term     The term code.
+	 * @param cpu      The minimal CPU.
+	 * @param ram      The minimal RAM, in MiB.
+	 * @return The cheapest matching price, or <code>null</code> when none matches.
+	 */
+	public Entry lookup(final String location, final VmOs os, final String term, final double cpu, final int ram) {
+		checkCompleted();
+		var current = index;
+		if (current == null) {
+			// Stale index, fall back to the database
+			current = getIndex();
+		}
+		final var buckets = current.get(toKey(location, os, term));
+		if (buckets == null) {
+			return null;
+		}
+
+		// Single probe of the smallest CPU and RAM buckets covering the requirements
+		final var i = lowerBound(buckets.cpus(), cpu);
+		final var j = lowerBound(buckets.rams(), ram);
+		if (i == buckets.cpus().length || j == buckets.rams().length) {
+			return null;
+		}
+		return buckets.cheapest()[i][j];
+	}
+
+	/**
+	 * Build the cheapest price of each CPU and RAM bucket: the cheapest price of a bucket is the cheapest one among the
+	 * prices of this exact bucket, and the cheapest prices of the next CPU bucket and of the next RAM bucket.
+	 */
+	private static Buckets toBuckets(final List<Entry> entries) {
+		final var cpus = entries.stream().mapToDouble(Entry::cpu).sorted().distinct().toArray();
+		final var rams = entries.stream().mapToInt(Entry::ram).sorted().distinct().toArray();
+		final var cheapest = new Entry[cpus.length][rams.length];
+		for (final var entry : entries) {
+			final var i = Arrays.binarySearch(cpus, entry.cpu());
+			final var j = Arrays.binarySearch(rams, entry.ram());
+			cheapest[i][j] = min(cheapest[i][j], entry);
+		}
+		for (var i = cpus.length - 1; i >= 0; i--) {
+			for (var j = rams.length - 1; j >= 0; j--) {
+				if (i + 1 < cpus.length) {
+					cheapest[i][j] = min(cheapest[i][j], cheapest[i + 1][j]);
+				}
+				if (j + 1 < rams.length) {
+					cheapest[i][j] = min(cheapest[i][j], cheapest[i][j + 1]);
+				}
+			}
+		}
+		return new Buckets(cpus, rams, cheapest);
+	}
+
+	private static Entry min(final Entry a, final Entry b) {
+		if (a == null) {
+			return b;
+		}
+		return b == null || BY_COST.compare(a, b) <= 0 ? a : b;
+	}
+
+	/**
+	 * Invalidate the index when an import has been completed since the index was built, possibly by another application
+	 * node.
+	 */
+	private void checkCompleted() {
+		final var now = System.currentTimeMillis();
+		if (now >= nextCheck) {
+			nextCheck = now + CHECK_INTERVAL;
+			if (!Objects.equals(indexed, lease.getCompleted(ProvFePluginResource.KEY))) {
+				invalidate();
+			}
+		}
+	}
+
+	/**
+	 * Return the index of the first value at least equal to the given one.
+	 */
+	private static int lowerBound(final double[] values, final double value) {
+		var low = 0;
+		var high = values.length;
+		while (low < high) {
+			final var mid = (low + high) >>> 1;
+			if (values[mid] < value) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Return the index of the first value at least equal to the given one.
+	 */
+	private static int lowerBound(final int[] values, final int value) {
+		var low = 0;
+		var high = values.length;
+		while (low < high) {
+			final var mid = (low + high) >>> 1;
+			if (values[mid] < value) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.fe.catalog;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.TreeSet;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+import org.ligoj.app.plugin.prov.ProvResource;
+import org.ligoj.bootstrap.core.security.SecurityHelper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Re-cost the quotes using the instance prices changed by a catalog import. The quotes not referencing these prices are
+ * not refreshed.
+ */
+@Component
+@Slf4j
+public class FeQuoteCostUpdater {
+
+	/**
+	 * Maximal amount of price identifiers per query.
+	 */
+	private static final int BATCH_SIZE = 500;
+
+	@PersistenceContext(unitName = "pu")
+	private EntityManager em;
+
+	@Autowired
+	private ProvResource provResource;
+
+	@Autowired
+	private SecurityHelper securityHelper;
+
+	/**
+	 * Re-cost the quotes having at least one instance using one of the given prices. The quotes are updated as the system
+	 * user, whatever the user having started the import.
+	 *
+	 * @param prices The identifiers of the changed instance prices.
+	 * @return The amount of updated quotes.
+	 */
+	public int update(final Collection<Integer> prices) {
+		if (prices.isEmpty()) {
+			return 0;
+		}
+		final var ids = new ArrayList<>(prices);
+		final var subscriptions = new TreeSet<Integer>();
+		for (var i = 0; i < ids.size(); i += BATCH_SIZE) {
+			subscriptions.addAll(em.createQuery("SELECT DISTINCT qi.configuration.subscription.id FROM ProvQuoteInstance qi WHERE qi.price.id IN :ids",
+					Integer.class).setParameter("ids", ids.subList(i, Math.min(ids.size(), i + BATCH_SIZE))).getResultList());
+		}
+
+		// Re-cost each affected quote, a failure does not block the other ones
+		var updated = 0;
+		final var context = SecurityContextHolder.getContext();
+		securityHelper.setUserName(SecurityHelper.SYSTEM_USERNAME);
+		try {
+			for (final var subscription : subscriptions) {
+				try {
+					provResource.updateCost(subscription);
+					updated++;
+				} catch (final RuntimeException e) {
+					log.warn("FE cost update of the quote of subscription {} failed", subscription, e);
+				}
+			}
+		} finally {
+			SecurityContextHolder.setContext(context);
+		}
+		log.info("FE quote cost update finished: {} changed prices, {}/{} quotes updated", prices.size(), updated, subscriptions.size());
+		return updated;
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.fe.catalog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bounded diagnostics of the rows rejected by the sheet parsing. All rejects are counted by reason, but only the first
+ * ones are kept with their details and logged at debug level, the counts being logged at the end of the parsing. A
+ * rejected row never stops the parsing.
+ */
+@Slf4j
+public class FeRejectSink {
+
+	/**
+	 * Reject reason.
+	 */
+	public enum Reason {
+		/**
+		 * The product does not match to the pattern <code>Location - type (...)</code>.
+		 */
+		INVALID_PRODUCT,
+
+		/**
+		 * The CPU of a compute row is not a number.
+		 */
+		INVALID_CPU,
+
+		/**
+		 * The licence block is not supported, its rows are ignored.
+		 */
+		UNSUPPORTED_LICENCE,
+
+		/**
+		 * The OS row is not inside a supported licence block.
+		 */
+		NO_LICENCE
+	}
+
+	/**
+	 * Rejected row.
+	 *
+	 * @param sheet  The sheet name.
+	 * @param line   The record number in the sheet, starting from <code>1</code>. <code>0</code> when unknown.
+	 * @param reason The reject reason.
+	 * @param value  The rejected cell.
+	 */
+	public record Reject(String sheet, int line, Reason reason, String value) {
+	}
+
+	/**
+	 * Maximal amount of detailed rejects.
+	 */
+	private static final int MAX_SAMPLES = 100;
+
+	private final List<Reject> samples = new ArrayList<>();
+
+	private final Map<Reason, Integer> counts = new EnumMap<>(Reason.class);
+
+	/**
+	 * Record a rejected row.
+	 *
+	 * @param sheet  The sheet name.
+	 * @param line   The record number in the sheet.
+	 * @param reason The reject reason.
+	 * @param value  The rejected cell.
+	 */
+	public synchronized void reject(final String sheet, final int line, final Reason reason, final String value) {
+		counts.merge(reason, 1, Integer::sum);
+		if (samples.size() < MAX_SAMPLES) {
+			log.debug("FE {} sheet row {} rejected ({}): {}", sheet, line, reason, value);
+			samples.add(new Reject(sheet, line, reason, value));
+		}
+	}
+
+	/**
+	 * Return the first rejected rows.
+	 *
+	 * @return The first rejected rows, at most {@value #MAX_SAMPLES}.
+	 */
+	public synchronized List<Reject> getSamples() {
+		return Collections.unmodifiableList(new ArrayList<>(samples));
+	}
+
+	/**
+	 * Return the amount of rejected rows by reason.
+	 *
+	 * @return The amount of rejected rows by reason.
+	 */
+	public synchronized Map<Reason, Integer> getCounts() {
+		return Collections.unmodifiableMap(new EnumMap<>(counts));
+	}
+}
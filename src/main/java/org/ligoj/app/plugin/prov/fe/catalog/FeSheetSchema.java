@@ -0,0 +1,123 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.fe.catalog;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import lombok.Getter;
+
+/**
+ * Layout of a FE price sheet, compiled into a column plan: the bean property of each column, the column indexes of the
+ * checked cells and the cells to sanitize.
+ */
+@Getter
+public class FeSheetSchema {
+
+	/**
+	 * Bean property of the ignored columns.
+	 */
+	public static final String DROP = "drop";
+
+	/**
+	 * Characters removed from the sanitized amounts.
+	 */
+	private static final Pattern NOT_AMOUNT = Pattern.compile("[^\\d,]");
+
+	/**
+	 * Layout name, such as <code>compute-v2</code>.
+	 */
+	private final String name;
+
+	/**
+	 * Sheet name, such as <code>compute</code>.
+	 */
+	private final String sheet;
+
+	/**
+	 * Normalized cells of the header row identifying this layout.
+	 */
+	private final String fingerprint;
+
+	/**
+	 * Amount of cells of the fingerprint.
+	 */
+	private final int fingerprintSize;
+
+	/**
+	 * When <code>true</code>, the fingerprint row is a machine header preceding the data, and is consumed. Otherwise,
+	 * the fingerprint row is a human header row inside the data, skipped as any other header row.
+	 */
+	private final boolean header;
+
+	/**
+	 * Bean property of each column, {@value #DROP} for the ignored ones.
+	 */
+	private final String[] columns;
+
+	/**
+	 * Minimal amount of cells of a data row.
+	 */
+	private final int minSize;
+
+	/**
+	 * Index of the product column.
+	 */
+	private final int product;
+
+	/**
+	 * Indexes of the cells whose amount is sanitized.
+	 */
+	private final int[] sanitized;
+
+	/**
+	 * Compile a layout.
+	 *
+	 * @param name        The layout name.
+	 * @param sheet       The sheet name.
+	 * @param fingerprint The normalized cells of the header row identifying this layout.
+	 * @param header      When <code>true</code>, the fingerprint row is a machine header and is consumed.
+	 * @param columns     The bean property of each column, {@value #DROP} for the ignored ones.
+	 * @param minSize     The minimal amount of cells of a data row.
+	 * @param sanitized   The bean properties whose amount is sanitized.
+	 */
+	public FeSheetSchema(final String name, final String sheet, final String fingerprint, final boolean header, final String[] columns,
+			final int minSize, final List<String> sanitized) {
+		this.name = name;
+		this.sheet = sheet;
+		this.fingerprint = fingerprint;
+		this.fingerprintSize = fingerprint.split("\\|", -1).length;
+		this.header = header;
+		this.columns = columns;
+		this.minSize = minSize;
+		this.product = indexOf("product");
+		this.sanitized = sanitized.stream().mapToInt(this::indexOf).toArray();
+	}
+
+	/**
+	 * Return the index of the column bound to the given bean property.
+	 *
+	 * @param property The bean property.
+	 * @return The column index.
+	 */
+	public int indexOf(final String property) {
+		final var index = Arrays.asList(columns).indexOf(property);
+		if (index < 0) {
+			throw new IllegalArgumentException("No column " + property + " in FE sheet layout " + name);
+		}
+		return index;
+	}
+
+	/**
+	 * Remove the currency and the other non numeric characters from the sanitized cells of a data row.
+	 *
+	 * @param rawValues The cells of a data row.
+	 */
+	public void sanitize(final List<String> rawValues) {
+		for (final var index : sanitized) {
+			rawValues.set(index, NOT_AMOUNT.matcher(rawValues.get(index)).replaceAll(""));
+		}
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.fe.catalog;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Registry of the known FE sheet layouts. The layout of a sheet is detected from the fingerprint of its header row,
+ * found in the first {@value #READ_AHEAD} characters, so an unknown layout is rejected before the parsing.
+ */
+public final class FeSheetSchemaRegistry {
+
+	/**
+	 * Amount of characters, or bytes, read to detect the layout.
+	 */
+	public static final int READ_AHEAD = 512;
+
+	/**
+	 * Maximal amount of rows read to detect the layout.
+	 */
+	private static final int MAX_ROWS = 5;
+
+	/**
+	 * Footnotes such as <code>[4][5]</code>, ignored by the fingerprint.
+	 */
+	private static final Pattern FOOTNOTE = Pattern.compile("\\[[^\\]]*\\]");
+
+	/**
+	 * Characters ignored by the fingerprint.
+	 */
+	private static final Pattern NOT_FINGERPRINT = Pattern.compile("[^a-z0-9_]");
+
+	private static final String[] COMPUTE_COLUMNS = { "product", "cpu", "ram", FeSheetSchema.DROP, FeSheetSchema.DROP, "cost1h", "cost1m",
+			"cost1yPerMonth", "cost1yUFFee", "cost1yUFPerMonth", FeSheetSchema.DROP, "cost2yUFFee", "cost2yUFPerMonth", FeSheetSchema.DROP,
+			"cost3yPerMonth", "cost3yUFFee", "cost3yUFPerMonth", FeSheetSchema.DROP, "cost5yPerMonth", "cost3yPerMonthConvertible" };
+
+	private static final String[] OS_COLUMNS = { "product", FeSheetSchema.DROP, FeSheetSchema.DROP, FeSheetSchema.DROP, FeSheetSchema.DROP,
+			"cost1h", "cost1m" };
+
+	/**
+	 * Known layouts, by detection order. The v1 sheets start with a machine header, the v2 sheets only have the human
+	 * header rows of each block.
+	 */
+	private static final List<FeSheetSchema> SCHEMAS = List.of(
+			new FeSheetSchema("compute-v1", "compute",
+					"product|cpu|ramgb|disk|size|cost_h|cost_m|cost_m_1y_no_upfront|cost_1y_upfront_fees|cost_m_1y_upfront"
+							+ "|cost_m_1y_upfront_equiv|cost_2y_upfront_fees|cost_m_2y_upfront|cost_m_2y_upfront_equiv|cost_m_3y_no_upfront"
+							+ "|cost_3y_upfront_fees|cost_m_3y_upfront|cost_m_3y_no_upfront_equiv|cost_m_5y_no_upfront|cost_m_3y_convertible",
+					true, COMPUTE_COLUMNS, 19, List.of("cpu", "ram")),
+			new FeSheetSchema("compute-v2", "compute", "produit|vcpu|ramgb", false, COMPUTE_COLUMNS, 19, List.of("cpu", "ram")),
+			new FeSheetSchema("compute-v2-en", "compute", "product|vcpu|ramgb", false, COMPUTE_COLUMNS, 19, List.of("cpu", "ram")),
+			new FeSheetSchema("os-v1", "os", "product|||||cost_h|cost_m", true, OS_COLUMNS, 7, List.of("cost1h", "cost1m")),
+			new FeSheetSchema("os-v2", "os", "produit|||||heureensusdesprixlinux|moisensusdesprixlinux", false, OS_COLUMNS, 7,
+					List.of("cost1h", "cost1m")));
+
+	private FeSheetSchemaRegistry() {
+		// Registry
+	}
+
+	/**
+	 * Detect the layout of a sheet from its first characters. The reader is reset to its initial position.
+	 *
+	 * @param sheet  The sheet name.
+	 * @param reader The sheet input, supporting the mark.
+	 * @return The detected layout.
+	 * @throws IOException When the layout is unknown or the input cannot be read.
+	 */
+	public static FeSheetSchema detect(final String sheet, final BufferedReader reader) throws IOException {
+		reader.mark(READ_AHEAD);
+		final var buffer = new char[READ_AHEAD];
+		var length = 0;
+		var read = 0;
+		while (length < READ_AHEAD && (read = reader.read(buffer, length, READ_AHEAD - length)) != -1) {
+			length += read;
+		}
+		reader.reset();
+		return detect(sheet, new String(buffer, 0, length));
+	}
+
+	/**
+	 * Detect the layout of a sheet from its first bytes, UTF-8 encoded.
+	 *
+	 * @param sheet  The sheet name.
+	 * @param prefix The first bytes of the sheet.
+	 * @return The detected layout.
+	 * @throws IOException When the layout is unknown.
+	 */
+	public static FeSheetSchema detect(final String sheet, final byte[] prefix) throws IOException {
+		return detect(sheet, new String(prefix, StandardCharsets.UTF_8));
+	}
+
+	private static FeSheetSchema detect(final String sheet, final String prefix) throws IOException {
+		for (final var row : toRows(prefix)) {
+			for (final var schema : SCHEMAS) {
+				if (schema.getSheet().equals(sheet) && row.size() >= schema.getFingerprintSize()
+						&& schema.getFingerprint().equals(fingerprint(row, schema.getFingerprintSize()))) {
+					return schema;
+				}
+			}
+		}
+		throw new IOException("Unsupported FE " + sheet + " sheet layout, no known header in the first " + READ_AHEAD + " characters");
+	}
+
+	/**
+	 * Return the normalized first cells of a row: lower case, without footnotes and without the other characters than
+	 * letters, digits and underscores.
+	 */
+	static String fingerprint(final List<String> row, final int size) {
+		final var cells = new ArrayList<String>(size);
+		for (final var cell : row.subList(0, size)) {
+			cells.add(NOT_FINGERPRINT.matcher(FOOTNOTE.matcher(cell.toLowerCase(Locale.ENGLISH)).replaceAll("")).replaceAll(""));
+		}
+		return String.join("|", cells);
+	}
+
+	/**
+	 * Split the first rows of the given semicolon separated content. The last row may be truncated.
+	 */
+	private static List<List<String>> toRows(final String content) {
+		final var rows = new ArrayList<List<String>>();
+		var row = new ArrayList<String>();
+		final var cell = new StringBuilder();
+		var quoted = false;
+		for (var i = 0; i < content.length() && rows.size() < MAX_ROWS; i++) {
+			final var c = content.charAt(i);
+			if (quoted) {
+				if (c != '"') {
+					cell.append(c);
+				} else if (i + 1 < content.length() && content.charAt(i + 1) == '"') {
+					// Escaped quote
+					cell.append(c);
+					i++;
+				} else {
+					quoted = false;
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ';') {
+				row.add(cell.toString());
+				cell.setLength(0);
+			} else if (c == '\n') {
+				row.add(cell.toString());
+				cell.setLength(0);
+				rows.add(row);
+				row = new ArrayList<>();
+			} else if (c != '\r') {
+				cell.append(c);
+			}
+		}
+		row.add(cell.toString());
+		rows.add(row);
+		return rows;
+	}
+}
@@ -0,0 +1,40 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.fe.catalog;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Symbol table of an import. The sheets repeat the same products, locations and types many times, each parsed cell
+ * being a new string. The retained values are replaced by a canonical instance. Unlike {@link String#intern()}, the
+ * table is released with the import.
+ */
+public class FeSymbolTable {
+
+	private final Map<String, String> symbols = new HashMap<>();
+
+	/**
+	 * Return the canonical instance of the given value.
+	 *
+	 * @param value The value to intern. May be <code>null</code>.
+	 * @return The canonical instance, equals to the given value.
+	 */
+	public String intern(final String value) {
+		if (value == null) {
+			return null;
+		}
+		final var symbol = symbols.putIfAbsent(value, value);
+		return symbol == null ? value : symbol;
+	}
+
+	/**
+	 * Return the amount of distinct values.
+	 *
+	 * @return The amount of distinct values.
+	 */
+	public int size() {
+		return symbols.size();
+	}
+}
@@ -3,10 +3,23 @@
  */
 package org.ligoj.app.plugin.prov.fe.catalog;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
 
 import org.ligoj.app.plugin.prov.catalog.AbstractUpdateContext;
+import org.ligoj.app.plugin.prov.fe.model.FePriceHistory;
+import org.ligoj.app.plugin.prov.fe.model.FeRetiredPrice;
+import org.ligoj.app.plugin.prov.model.ProvInstancePrice;
+import org.ligoj.app.plugin.prov.model.ProvStoragePrice;
+import org.ligoj.app.plugin.prov.model.ProvStorageType;
+import org.ligoj.app.plugin.prov.model.ProvSupportPrice;
+import org.ligoj.app.plugin.prov.model.ProvSupportType;
 import org.ligoj.app.plugin.prov.model.VmOs;
 
 import lombok.Getter;
@@ -43,4 +56,174 @@ public class UpdateContext extends AbstractUpdateContext {
 
 	private Map<String, Map<String, Map<VmOs, Map<String, CsvOsPrice>>>> osPrices;
 
+	/**
+	 * When <code>true</code>, the catalog is read from the snapshot bundled in this plugin.
+	 */
+	private boolean bundled;
+
+	/**
+	 * Instance price codes found in the remote catalog during this import. The other previous prices are swept.
+	 */
+	private final Set<String> seenPrices = new HashSet<>();
+
+	/**
+	 * Retirement markers of the previous instance prices, by code.
+	 */
+	private Map<String, FeRetiredPrice> retired = new HashMap<>();
+
+	/**
+	 * State of an instance price before its first write by this import.
+	 *
+	 * @param id          The identifier, <code>null</code> for a new price.
+	 * @param cost        The previous monthly cost.
+	 * @param initialCost The previous initial cost.
+	 */
+	public record PriceState(Integer id, Double cost, Double initialCost) {
+	}
+
+	/**
+	 * State before the first write of the instance prices written in the current region, by code. Compared with the final
+	 * state of these prices at the region commit.
+	 */
+	private final Map<String, PriceState> writtenPrices = new HashMap<>();
+
+	/**
+	 * New instance prices of the current region not yet persisted, inserted by JDBC batches at the region commit of a
+	 * bundled install.
+	 */
+	private final List<ProvInstancePrice> pendingPrices = new ArrayList<>();
+
+	/**
+	 * Identifiers of the existing instance prices whose cost has been changed by this import.
+	 */
+	private final Set<Integer> changedPrices = new HashSet<>();
+
+	/**
+	 * Start date of this import.
+	 */
+	private final Instant started = Instant.now();
+
+	/**
+	 * Catalog revision assigned to this import.
+	 */
+	private long revision;
+
+	/**
+	 * Price changes not yet stored in the price history.
+	 */
+	private final List<FePriceHistory> history = new ArrayList<>();
+
+	/**
+	 * Symbol table of the parsed products, locations and types.
+	 */
+	private final FeSymbolTable symbols = new FeSymbolTable();
+
+	/**
+	 * Current import phase.
+	 */
+	private String phase;
+
+	/**
+	 * Time limit of the current phase, in milliseconds since the epoch. When <code>0</code>, no limit.
+	 */
+	private long deadline;
+
+	/**
+	 * Flight recorder event of the current phase. May be <code>null</code>.
+	 */
+	private FePhaseEvent phaseEvent;
+
+	/**
+	 * Amount of rows processed by the current phase.
+	 */
+	private long phaseRows;
+
+	/**
+	 * Loader of the storage types, called on the first access. <code>null</code> once loaded.
+	 */
+	private Supplier<Map<String, ProvStorageType>> storageTypesLoader;
+
+	/**
+	 * Loader of the previous storage prices, called on the first access. <code>null</code> once loaded.
+	 */
+	private Supplier<Map<String, ProvStoragePrice>> previousStorageLoader;
+
+	/**
+	 * Loader of the support types, called on the first access. <code>null</code> once loaded.
+	 */
+	private Supplier<Map<String, ProvSupportType>> supportTypesLoader;
+
+	/**
+	 * Loader of the previous support prices, called on the first access. <code>null</code> once loaded.
+	 */
+	private Supplier<Map<String, ProvSupportPrice>> previousSupportLoader;
+
+	@Override
+	public Map<String, ProvStorageType> getStorageTypes() {
+		if (storageTypesLoader != null) {
+			setStorageTypes(storageTypesLoader.get());
+			storageTypesLoader = null;
+		}
+		return super.getStorageTypes();
+	}
+
+	@Override
+	public Map<String, ProvStoragePrice> getPreviousStorage() {
+		if (previousStorageLoader != null) {
+			setPreviousStorage(previousStorageLoader.get());
+			previousStorageLoader = null;
+		}
+		return super.getPreviousStorage();
+	}
+
+	@Override
+	public Map<String, ProvSupportType> getSupportTypes() {
+		if (supportTypesLoader != null) {
+			setSupportTypes(supportTypesLoader.get());
+			supportTypesLoader = null;
+		}
+		return super.getSupportTypes();
+	}
+
+	@Override
+	public Map<String, ProvSupportPrice> getPreviousSupport() {
+		if (previousSupportLoader != null) {
+			setPreviousSupport(previousSupportLoader.get());
+			previousSupportLoader = null;
+		}
+		return super.getPreviousSupport();
+	}
+
+	/**
+	 * Release the maps only used by the instance prices installation.
+	 */
+	public void releaseInstances() {
+		setPrevious(new HashMap<>());
+		setInstanceTypes(new HashMap<>());
+		setCsvPrices(null);
+		setOsPrices(null);
+		setRetired(new HashMap<>());
+		seenPrices.clear();
+		writtenPrices.clear();
+		pendingPrices.clear();
+		changedPrices.clear();
+		history.clear();
+	}
+
+	/**
+	 * Release the maps only used by the storage prices installation.
+	 */
+	public void releaseStorages() {
+		setStorageTypes(new HashMap<>());
+		setPreviousStorage(new HashMap<>());
+	}
+
+	/**
+	 * Release the maps only used by the support prices installation.
+	 */
+	public void releaseSupports() {
+		setSupportTypes(new HashMap<>());
+		setPreviousSupport(new HashMap<>());
+	}
+
 }
@@ -0,0 +1,161 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.fe.dao;
+
+import java.time.Instant;
+import java.util.Date;
+
+import org.ligoj.app.plugin.prov.fe.model.FeImportLease;
+import org.ligoj.bootstrap.core.dao.RestRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * {@link FeImportLease} repository.
+ */
+public interface FeImportLeaseRepository extends RestRepository<FeImportLease, String> {
+
+	/**
+	 * Return the current time of the database, shared by all the application nodes whatever their own clock.
+	 *
+	 * @param node The node identifier.
+	 * @return The current time of the database. <code>null</code> when there is no lease for this node.
+	 */
+	@Query("SELECT CURRENT_TIMESTAMP FROM FeImportLease WHERE node = :node")
+	Date findNow(@Param("node") String node);
+
+	/**
+	 * Acquire or renew the lease when it is expired, according to the database clock, or already owned.
+	 *
+	 * @param node   The node identifier.
+	 * @param owner  The candidate owner.
+	 * @param now    The current time of the database.
+	 * @param expiry The new expiry.
+	 * @return The amount of updated rows: <code>1</code> when the lease is acquired.
+	 */
+	@Modifying
+	@Transactional
+	@Query("UPDATE FeImportLease SET owner = :owner, expiry = :expiry, heartbeat = :now WHERE node = :node"
+			+ " AND (owner = :owner OR expiry < CURRENT_TIMESTAMP)")
+	int acquire(@Param("node") String node, @Param("owner") String owner, @Param("now") Instant now, @Param("expiry") Instant expiry);
+
+	/**
+	 * Extend the lease of the given owner.
+	 *
+	 * @param node   The node identifier.
+	 * @param owner  The owner.
+	 * @param now    The current time of the database.
+	 * @param expiry The new expiry.
+	 * @return The amount of updated rows: <code>0</code> when the lease has been lost.
+	 */
+	@Modifying
+	@Transactional
+	@Query("UPDATE FeImportLease SET expiry = :expiry, heartbeat = :now WHERE node = :node AND owner = :owner")
+	int heartbeat(@Param("node") String node, @Param("owner") String owner, @Param("now") Instant now, @Param("expiry") Instant expiry);
+
+	/**
+	 * Release the lease of the given owner.
+	 *
+	 * @param node  The node identifier.
+	 * @param owner The owner.
+	 * @param now   The current time of the database.
+	 * @return The amount of updated rows.
+	 */
+	@Modifying
+	@Transactional
+	@Query("UPDATE FeImportLease SET expiry = :now, heartbeat = :now WHERE node = :node AND owner = :owner")
+	int release(@Param("node") String node, @Param("owner") String owner, @Param("now") Instant now);
+
+	/**
+	 * Release the lease of the given owner, publish the completion marker and the catalog revision, and clear the
+	 * checkpoint.
+	 *
+	 * @param node  The node identifier.
+	 * @param owner The owner.
+	 * @param now   The current time of the database, used as completion marker.
+	 * @return The amount of updated rows.
+	 */
+	@Modifying
+	@Transactional
+	@Query("UPDATE FeImportLease SET expiry = :now, heartbeat = :now, completed = :now, published = revision, checkpointDigest = NULL,"
+			+ " checkpointRegion = NULL WHERE node = :node AND owner = :owner")
+	int complete(@Param("node") String node, @Param("owner") String owner, @Param("now") Instant now);
+
+	/**
+	 * Publish the catalog revision of the given owner and clear the checkpoint, the import has nothing left to resume.
+	 *
+	 * @param node  The node identifier.
+	 * @param owner The owner.
+	 * @return The amount of updated rows: <code>0</code> when the lease has been lost.
+	 */
+	@Modifying
+	@Transactional
+	@Query("UPDATE FeImportLease SET published = revision, checkpointDigest = NULL, checkpointRegion = NULL WHERE node = :node AND owner = :owner")
+	int publish(@Param("node") String node, @Param("owner") String owner);
+
+	/**
+	 * Record the last region completed by the given owner.
+	 *
+	 * @param node   The node identifier.
+	 * @param owner  The owner.
+	 * @param digest The digest of the imported catalog.
+	 * @param region The completed region.
+	 * @return The amount of updated rows: <code>0</code> when the lease has been lost.
+	 */
+	@Modifying
+	@Transactional
+	@Query("UPDATE FeImportLease SET checkpointDigest = :digest, checkpointRegion = :region WHERE node = :node AND owner = :owner")
+	int checkpoint(@Param("node") String node, @Param("owner") String owner, @Param("digest") String digest, @Param("region") String region);
+
+	/**
+	 * Assign the next catalog revision to the import of the given owner.
+	 *
+	 * @param node  The node identifier.
+	 * @param owner The owner.
+	 * @return The amount of updated rows: <code>0</code> when the lease has been lost.
+	 */
+	@Modifying
+	@Transactional
+	@Query("UPDATE FeImportLease SET revision = COALESCE(revision, 0) + 1 WHERE node = :node AND owner = :owner")
+	int nextRevision(@Param("node") String node, @Param("owner") String owner);
+
+	/**
+	 * Return the last catalog revision assigned to an import.
+	 *
+	 * @param node The node identifier.
+	 * @return The last assigned revision. May be <code>null</code>.
+	 */
+	@Query("SELECT revision FROM FeImportLease WHERE node = :node")
+	Long findRevision(@Param("node") String node);
+
+	/**
+	 * Return the catalog revision of the last successful import.
+	 *
+	 * @param node The node identifier.
+	 * @return The published revision. May be <code>null</code>.
+	 */
+	@Query("SELECT published FROM FeImportLease WHERE node = :node")
+	Long findPublished(@Param("node") String node);
+
+	/**
+	 * Return the completion marker of the last successful import.
+	 *
+	 * @param node The node identifier.
+	 * @return The completion marker. May be <code>null</code>.
+	 */
+	@Query("SELECT completed FROM FeImportLease WHERE node = :node")
+	Instant findCompleted(@Param("node") String node);
+
+	/**
+	 * Return the last region completed by an unfinished import of the given catalog.
+	 *
+	 * @param node   The node identifier.
+	 * @param digest The digest of the catalog.
+	 * @return The last completed region. May be <code>null</code>.
+	 */
+	@Query("SELECT checkpointRegion FROM FeImportLease WHERE node = :node AND checkpointDigest = :digest")
+	String findCheckpoint(@Param("node") String node, @Param("digest") String digest);
+}
@@ -0,0 +1,67 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.fe.dao;
+
+import java.util.List;
+
+import org.ligoj.app.plugin.prov.fe.model.FePriceHistory;
+import org.ligoj.bootstrap.core.dao.RestRepository;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+/**
+ * {@link FePriceHistory} repository.
+ */
+public interface FePriceHistoryRepository extends RestRepository<FePriceHistory, Integer> {
+
+	/**
+	 * The kinds of change setting the cost of a price.
+	 */
+	String COST_CHANGES = "org.ligoj.app.plugin.prov.fe.model.FePriceChange.CREATED, org.ligoj.app.plugin.prov.fe.model.FePriceChange.UPDATED";
+
+	/**
+	 * JPQL condition on an instance price <code>p</code> excluding the prices hidden from the readers at the published
+	 * revision <code>:published</code>: the prices created or restored by a later revision, and the ones retired up to
+	 * this revision.
+	 */
+	String PUBLISHED = "NOT EXISTS (SELECT h.id FROM FePriceHistory h WHERE h.code = p.code AND h.revision > :published"
+			+ " AND h.kind IN (org.ligoj.app.plugin.prov.fe.model.FePriceChange.CREATED, org.ligoj.app.plugin.prov.fe.model.FePriceChange.RESTORED))"
+			+ " AND NOT EXISTS (SELECT r.id FROM FeRetiredPrice r WHERE r.code = p.code AND r.revision <= :published)";
+
+	/**
+	 * Return the cost changes of an instance price.
+	 *
+	 * @param code The instance price code.
+	 * @return The cost changes ordered by import date.
+	 */
+	@Query("FROM FePriceHistory WHERE code = :code ORDER BY imported")
+	List<FePriceHistory> findAllByCode(@Param("code") String code);
+
+	/**
+	 * Return a page of the price changes of a revision range, ordered by identifier.
+	 *
+	 * @param since    The excluded lowest revision.
+	 * @param until    The included highest revision.
+	 * @param after    The excluded lowest identifier, the last one of the previous page.
+	 * @param pageable The page size.
+	 * @return The price changes of the revision range, after the given identifier.
+	 */
+	@Query("FROM FePriceHistory WHERE revision > :since AND revision <= :until AND id > :after ORDER BY id")
+	List<FePriceHistory> findAllChanges(@Param("since") long since, @Param("until") long until, @Param("after") int after, Pageable pageable);
+
+	/**
+	 * Return the published costs of the instance prices having a cost change not yet published: the last published
+	 * change setting their cost. The prices without published cost change are not returned, their current cost is the
+	 * only known one.
+	 *
+	 * @param published The published revision.
+	 * @return The last published cost change of each price having an unpublished cost change.
+	 */
+	@Query("FROM FePriceHistory h WHERE h.kind IN (" + COST_CHANGES + ") AND h.code IN (SELECT u.code FROM FePriceHistory u"
+			+ " WHERE u.revision > :published AND u.kind = org.ligoj.app.plugin.prov.fe.model.FePriceChange.UPDATED)"
+			+ " AND h.revision = (SELECT MAX(l.revision) FROM FePriceHistory l WHERE l.code = h.code AND l.revision <= :published"
+			+ " AND l.kind IN (" + COST_CHANGES + "))")
+	List<FePriceHistory> findPublishedCosts(@Param("published") long published);
+}
@@ -0,0 +1,28 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.fe.dao;
+
+import java.util.Collection;
+
+import org.ligoj.app.plugin.prov.fe.model.FeRetiredPrice;
+import org.ligoj.bootstrap.core.dao.RestRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+/**
+ * {@link FeRetiredPrice} repository.
+ */
+public interface FeRetiredPriceRepository extends RestRepository<FeRetiredPrice, Integer> {
+
+	/**
+	 * Delete the retirement markers of the given instance prices.
+	 *
+	 * @param codes The instance price codes.
+	 * @return The amount of deleted markers.
+	 */
+	@Modifying
+	@Query("DELETE FROM FeRetiredPrice WHERE code IN :codes")
+	int deleteAllByCode(@Param("codes") Collection<String> codes);
+}
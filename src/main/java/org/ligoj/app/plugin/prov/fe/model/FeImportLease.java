@@ -0,0 +1,78 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.fe.model;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Cluster wide lease of the catalog import of a node. Only the owner of a not expired lease imports the catalog.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "LIGOJ_PROV_FE_IMPORT_LEASE")
+public class FeImportLease implements Serializable {
+
+	/**
+	 * SID
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The node identifier of the imported catalog.
+	 */
+	@Id
+	private String node;
+
+	/**
+	 * The application node owning this lease. <code>null</code> until the first acquisition.
+	 */
+	private String owner;
+
+	/**
+	 * When the lease expires without heartbeat, according to the database clock.
+	 */
+	private Instant expiry;
+
+	/**
+	 * Last heartbeat of the owner.
+	 */
+	private Instant heartbeat;
+
+	/**
+	 * Completion marker of the last successful import. May be <code>null</code>.
+	 */
+	private Instant completed;
+
+	/**
+	 * Digest of the catalog being imported when the last region has been completed. <code>null</code> when there is no
+	 * import to resume.
+	 */
+	private String checkpointDigest;
+
+	/**
+	 * Last region completed by the import of the catalog {@link #checkpointDigest}.
+	 */
+	private String checkpointRegion;
+
+	/**
+	 * Last catalog revision assigned to an import. May be <code>null</code> before the first import.
+	 */
+	private Long revision;
+
+	/**
+	 * Catalog revision of the last import having switched the instance prices over. The changes of the later revisions
+	 * are not yet complete, and are hidden from the readers of this plugin. May be <code>null</code> before the first
+	 * successful import.
+	 */
+	private Long published;
+}
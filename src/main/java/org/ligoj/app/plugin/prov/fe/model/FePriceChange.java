@@ -0,0 +1,34 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.fe.model;
+
+/**
+ * Kind of change of an instance price during a catalog import.
+ */
+public enum FePriceChange {
+	/**
+	 * New price.
+	 */
+	CREATED,
+
+	/**
+	 * Existing price with a new cost.
+	 */
+	UPDATED,
+
+	/**
+	 * Price no more available in the catalog and deleted.
+	 */
+	REMOVED,
+
+	/**
+	 * Price no more available in the catalog, but kept and marked as retired since a quote still uses it.
+	 */
+	RETIRED,
+
+	/**
+	 * Retired price found again in the catalog, and proposed again.
+	 */
+	RESTORED
+}
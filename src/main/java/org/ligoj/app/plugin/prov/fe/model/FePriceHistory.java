@@ -0,0 +1,63 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.fe.model;
+
+import java.time.Instant;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+import org.springframework.data.jpa.domain.AbstractPersistable;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Change of an instance price during a catalog import. A row is only stored when the price is new, removed or has a new
+ * cost, so the history grows with the changes, not with the catalog size.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "LIGOJ_PROV_FE_PRICE_HISTORY", indexes = { @Index(name = "IX_PROV_FE_PRICE_HISTORY_CODE", columnList = "code,imported"),
+		@Index(name = "IX_PROV_FE_PRICE_HISTORY_REVISION", columnList = "revision") })
+public class FePriceHistory extends AbstractPersistable<Integer> {
+
+	/**
+	 * The instance price code.
+	 */
+	private String code;
+
+	/**
+	 * The start date of the import run having changed this cost.
+	 */
+	private Instant imported;
+
+	/**
+	 * The catalog revision of the import run having changed this price.
+	 */
+	@Column(nullable = false)
+	private long revision;
+
+	/**
+	 * The kind of change.
+	 */
+	@Column(nullable = false)
+	@Enumerated(EnumType.STRING)
+	private FePriceChange kind;
+
+	/**
+	 * The new monthly cost, or the last one when the price is removed.
+	 */
+	private double cost;
+
+	/**
+	 * The new initial cost. May be <code>null</code>.
+	 */
+	private Double initialCost;
+}
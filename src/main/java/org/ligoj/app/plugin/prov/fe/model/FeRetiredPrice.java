@@ -0,0 +1,41 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.fe.model;
+
+import java.time.Instant;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+
+import org.springframework.data.jpa.domain.AbstractPersistable;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Retirement marker of an instance price no more available in the catalog, but kept because a quote still uses it. A
+ * retired price is not proposed anymore by this plugin, and is deleted by the first import finding it unused.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "LIGOJ_PROV_FE_RETIRED_PRICE", uniqueConstraints = @UniqueConstraint(columnNames = "code"))
+public class FeRetiredPrice extends AbstractPersistable<Integer> {
+
+	/**
+	 * The instance price code.
+	 */
+	private String code;
+
+	/**
+	 * The start date of the import run having retired this price.
+	 */
+	private Instant retired;
+
+	/**
+	 * The catalog revision of the import run having retired this price.
+	 */
+	private Long revision;
+}
@@ -3,10 +3,26 @@
  */
 package org.ligoj.app.plugin.prov.fe;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import jakarta.transaction.Transactional;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import jakarta.ws.rs.sse.OutboundSseEvent;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseBroadcaster;
+import jakarta.ws.rs.sse.SseEventSink;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
@@ -21,18 +37,29 @@ import org.ligoj.app.model.Parameter;
 import org.ligoj.app.model.ParameterValue;
 import org.ligoj.app.model.Project;
 import org.ligoj.app.model.Subscription;
+import org.ligoj.app.plugin.prov.catalog.ImportCatalogResource;
+import org.ligoj.app.plugin.prov.fe.catalog.FeImportSkippedException;
 import org.ligoj.app.plugin.prov.fe.catalog.FePriceImport;
+import org.ligoj.app.plugin.prov.fe.catalog.FePriceIndex;
+import org.ligoj.app.plugin.prov.fe.model.FeImportLease;
+import org.ligoj.app.plugin.prov.fe.model.FePriceChange;
+import org.ligoj.app.plugin.prov.fe.model.FePriceHistory;
 import org.ligoj.app.plugin.prov.model.ProvLocation;
 import org.ligoj.app.plugin.prov.model.ProvQuote;
+import org.ligoj.app.plugin.prov.model.VmOs;
 import org.ligoj.app.resource.subscription.SubscriptionResource;
 import org.ligoj.bootstrap.core.resource.BusinessException;
+import org.ligoj.bootstrap.core.security.SecurityHelper;
 import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.test.annotation.Rollback;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 /**
  * Test class of {@link ProvFePluginResource}
  */
@@ -53,6 +80,9 @@ class ProvFePluginResourceTest extends AbstractServerTest {
 	@Autowired
 	private ConfigurationResource configuration;
 
+	@Autowired
+	private SecurityHelper securityHelper;
+
 	@BeforeEach
 	void prepareData() throws IOException {
 		persistSystemEntities();
@@ -66,6 +96,7 @@ class ProvFePluginResourceTest extends AbstractServerTest {
 
 		// Invalidate fe cache
 		cacheManager.getCache("curl-tokens").clear();
+		resource.lease.invalidate();
 	}
 
 	@Test
@@ -82,7 +113,44 @@ class ProvFePluginResourceTest extends AbstractServerTest {
 	void install() throws Exception {
 		final var resource2 = new ProvFePluginResource();
 		resource2.priceImport = Mockito.mock(FePriceImport.class);
+		resource2.priceIndex = Mockito.mock(FePriceIndex.class);
+		resource2.install();
+		Mockito.verify(resource2.priceIndex).build();
+		Mockito.verify(resource2.priceImport).install(false);
+	}
+
+	@Test
+	void installSkipped() throws Exception {
+		final var resource2 = new ProvFePluginResource();
+		resource2.priceImport = Mockito.mock(FePriceImport.class);
+		resource2.priceIndex = Mockito.mock(FePriceIndex.class);
+		Mockito.doThrow(new FeImportSkippedException(ProvFePluginResource.KEY)).when(resource2.priceImport).install(false);
+
+		// The plugin is installed, relying on the import of the other node
+		resource2.install();
+		Mockito.verify(resource2.priceIndex, Mockito.never()).build();
+
+		// An explicit import reports the skip
+		Assertions.assertThrows(FeImportSkippedException.class, () -> resource2.installAndIndex(false));
+		Mockito.verify(resource2.priceIndex, Mockito.never()).build();
+	}
+
+	@Test
+	void installBundled() throws Exception {
+		final var resource2 = new ProvFePluginResource();
+		resource2.securityHelper = securityHelper;
+		resource2.priceImport = Mockito.mock(FePriceImport.class);
+		resource2.priceIndex = Mockito.mock(FePriceIndex.class);
+		Mockito.doReturn(true).when(resource2.priceImport).installBundled();
+		final var user = new CompletableFuture<String>();
+		Mockito.doAnswer(i -> user.complete(SecurityContextHolder.getContext().getAuthentication().getName())).when(resource2.priceImport)
+				.install(false);
 		resource2.install();
+
+		// The remote catalog is installed in background, as the system user
+		Assertions.assertEquals(SecurityHelper.SYSTEM_USERNAME, user.get(5, TimeUnit.SECONDS));
+		Mockito.verify(resource2.priceIndex, Mockito.timeout(5000).times(2)).build();
+		resource2.shutdown();
 	}
 
 	@Test
@@ -94,6 +162,145 @@ class ProvFePluginResourceTest extends AbstractServerTest {
 		resource2.updateCatalog("service:prov:fe:test", false);
 	}
 
+	@Test
+	void installSingleFlight() throws Exception {
+		final var resource2 = new ProvFePluginResource();
+		resource2.priceImport = Mockito.mock(FePriceImport.class);
+		resource2.priceIndex = Mockito.mock(FePriceIndex.class);
+		final var started = new CountDownLatch(1);
+		final var release = new CountDownLatch(1);
+		Mockito.doAnswer(i -> {
+			started.countDown();
+			release.await();
+			return null;
+		}).when(resource2.priceImport).install(false);
+
+		// The second caller is attached to the running import
+		final var first = CompletableFuture.runAsync(() -> install(resource2, false));
+		started.await();
+		final var second = CompletableFuture.runAsync(() -> install(resource2, false));
+		while (resource2.attached.get() == 0) {
+			Thread.sleep(10);
+		}
+		release.countDown();
+		first.get();
+		second.get();
+		Mockito.verify(resource2.priceImport, Mockito.times(1)).install(false);
+		Mockito.verify(resource2.priceImport, Mockito.never()).install(true);
+	}
+
+	@Test
+	void installSingleFlightForce() throws Exception {
+		final var resource2 = new ProvFePluginResource();
+		resource2.priceImport = Mockito.mock(FePriceImport.class);
+		resource2.priceIndex = Mockito.mock(FePriceIndex.class);
+		final var started = new CountDownLatch(1);
+		final var release = new CountDownLatch(1);
+		Mockito.doAnswer(i -> {
+			started.countDown();
+			release.await();
+			throw new IOException();
+		}).when(resource2.priceImport).install(false);
+
+		// The forced caller waits for the running import, then runs a forced one
+		final var first = CompletableFuture.runAsync(() -> install(resource2, false));
+		started.await();
+		final var second = CompletableFuture.runAsync(() -> install(resource2, true));
+		while (resource2.attached.get() == 0) {
+			Thread.sleep(10);
+		}
+		release.countDown();
+		Assertions.assertThrows(ExecutionException.class, first::get);
+		second.get();
+		Mockito.verify(resource2.priceImport).install(false);
+		Mockito.verify(resource2.priceImport).install(true);
+	}
+
+	@Test
+	void installSingleFlightError() throws Exception {
+		final var resource2 = new ProvFePluginResource();
+		resource2.priceImport = Mockito.mock(FePriceImport.class);
+		resource2.priceIndex = Mockito.mock(FePriceIndex.class);
+		final var started = new CountDownLatch(1);
+		final var release = new CountDownLatch(1);
+		Mockito.doAnswer(i -> {
+			started.countDown();
+			release.await();
+			throw new StackOverflowError();
+		}).doNothing().when(resource2.priceImport).install(false);
+
+		// The attached caller gets the error of the running import
+		final var first = CompletableFuture.runAsync(() -> install(resource2, false));
+		started.await();
+		final var second = CompletableFuture.runAsync(() -> install(resource2, false));
+		while (resource2.attached.get() == 0) {
+			Thread.sleep(10);
+		}
+		release.countDown();
+		Assertions.assertInstanceOf(StackOverflowError.class, Assertions.assertThrows(ExecutionException.class, first::get).getCause());
+		Assertions.assertInstanceOf(StackOverflowError.class, Assertions.assertThrows(ExecutionException.class, second::get).getCause());
+
+		// The next import is not blocked by the failed one
+		resource2.installAndIndex(false);
+		Mockito.verify(resource2.priceImport, Mockito.times(2)).install(false);
+	}
+
+	private void install(final ProvFePluginResource resource, final boolean force) {
+		try {
+			resource.installAndIndex(force);
+		} catch (final Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Test
+	void scheduleRefresh() {
+		final var resource2 = new ProvFePluginResource();
+		super.applicationContext.getAutowireCapableBeanFactory().autowireBean(resource2);
+		resource2.scheduleRefresh();
+		resource2.shutdown();
+	}
+
+	@Test
+	void refreshTick() {
+		final var resource2 = new ProvFePluginResource();
+		super.applicationContext.getAutowireCapableBeanFactory().autowireBean(resource2);
+		resource2.importCatalogResource = Mockito.mock(ImportCatalogResource.class);
+		final var users = new ArrayList<String>();
+		Mockito.doAnswer(i -> {
+			users.add(SecurityContextHolder.getContext().getAuthentication().getName());
+			return null;
+		}).when(resource2.importCatalogResource).updateCatalog(ProvFePluginResource.KEY, false);
+
+		// Disabled refresh
+		resource2.refreshTick();
+		Assertions.assertEquals(0, resource2.nextRefresh);
+
+		// The interval is read on each tick, the first refresh is planned after this interval
+		configuration.put(ProvFePluginResource.CONF_REFRESH, "60");
+		resource2.refreshTick();
+		Assertions.assertTrue(resource2.nextRefresh >= System.currentTimeMillis() + 3_500_000);
+		resource2.refreshTick();
+		Assertions.assertTrue(users.isEmpty());
+
+		// Due refresh, started as an import task of the system user
+		resource2.nextRefresh = 0;
+		resource2.refreshTick();
+		Assertions.assertEquals(List.of(SecurityHelper.SYSTEM_USERNAME), users);
+		Assertions.assertTrue(resource2.nextRefresh > System.currentTimeMillis());
+
+		// Disabled again without restart
+		configuration.put(ProvFePluginResource.CONF_REFRESH, "0");
+		resource2.nextRefresh = 0;
+		resource2.refreshTick();
+		Assertions.assertEquals(1, users.size());
+	}
+
+	@Test
+	void lookupEmptyCatalog() {
+		Assertions.assertNull(resource.lookup("eu-west-0", VmOs.LINUX, "on-demand", 1, 1024));
+	}
+
 	@Test
 	void updateCatalogNoRight() {
 		initSpringSecurityContext("any");
@@ -102,6 +309,171 @@ class ProvFePluginResourceTest extends AbstractServerTest {
 		Assertions.assertEquals("read-only-node", Assertions.assertThrows(BusinessException.class, () -> resource.updateCatalog("service:prov:fe:test", false)).getMessage());
 	}
 
+	@Test
+	void getHistoryUnknown() {
+		Assertions.assertTrue(resource.getHistory("any").isEmpty());
+	}
+
+	@Test
+	void getHistory() {
+		final var history = new FePriceHistory();
+		history.setCode("eu-west-0/on-demand/s3.small.1/linux");
+		history.setImported(Instant.now());
+		history.setRevision(1);
+		history.setKind(FePriceChange.CREATED);
+		history.setCost(10);
+		em.persist(history);
+		em.flush();
+
+		final var changes = resource.getHistory("eu-west-0/on-demand/s3.small.1/linux");
+		Assertions.assertEquals(1, changes.size());
+		Assertions.assertEquals(1, changes.get(0).revision());
+		Assertions.assertEquals(FePriceChange.CREATED, changes.get(0).kind());
+		Assertions.assertEquals(10, changes.get(0).cost());
+		Assertions.assertNull(changes.get(0).initialCost());
+		Assertions.assertEquals(history.getImported(), changes.get(0).imported());
+	}
+
+	@Test
+	void getHistoryNoRight() {
+		initSpringSecurityContext("any");
+		Assertions.assertEquals("read-only-node",
+				Assertions.assertThrows(BusinessException.class, () -> resource.getHistory("eu-west-0/on-demand/s3.small.1/linux")).getMessage());
+	}
+
+	@Test
+	void getChanges() throws IOException {
+		final var lease = new FeImportLease();
+		lease.setNode(ProvFePluginResource.KEY);
+		lease.setRevision(3L);
+		lease.setPublished(2L);
+		em.persist(lease);
+		for (var revision = 1L; revision <= 3; revision++) {
+			final var history = new FePriceHistory();
+			history.setCode("eu-west-0/on-demand/s3.small.1/linux");
+			history.setImported(Instant.now());
+			history.setRevision(revision);
+			history.setKind(revision == 1 ? FePriceChange.CREATED : FePriceChange.UPDATED);
+			history.setCost(10 + revision);
+			em.persist(history);
+		}
+		em.flush();
+
+		// Only the changes after the known revision and up to the published one
+		final var out = new ByteArrayOutputStream();
+		resource.getChanges(1).write(out);
+		final var changes = new ObjectMapper().readTree(out.toByteArray());
+		Assertions.assertEquals(2, changes.get("revision").asLong());
+		Assertions.assertEquals(1, changes.get("changes").size());
+		Assertions.assertEquals("UPDATED", changes.get("changes").get(0).get("kind").asText());
+		Assertions.assertEquals(12, changes.get("changes").get(0).get("cost").asDouble());
+
+		// Up to date consumer
+		out.reset();
+		resource.getChanges(2).write(out);
+		Assertions.assertEquals(0, new ObjectMapper().readTree(out.toByteArray()).get("changes").size());
+	}
+
+	@Test
+	void getPrices() throws IOException {
+		final var request = Mockito.mock(Request.class);
+		final var response = resource.getPrices(request, "eu-west-0", null, "on-demand", VmOs.LINUX, 0, 10);
+		Assertions.assertEquals(200, response.getStatus());
+		Assertions.assertEquals(new EntityTag("0"), response.getEntityTag());
+		final var out = new ByteArrayOutputStream();
+		((StreamingOutput) response.getEntity()).write(out);
+		final var prices = new ObjectMapper().readTree(out.toByteArray());
+		Assertions.assertEquals(0, prices.get("prices").size());
+		Assertions.assertFalse(prices.has("next"));
+	}
+
+	@Test
+	void getPricesNewRevision() {
+		final var request = Mockito.mock(Request.class);
+		Assertions.assertEquals(new EntityTag("0"), resource.getPrices(request, null, null, null, null, 0, 10).getEntityTag());
+
+		// A revision published by another node is visible once the cached revisions are refreshed
+		final var lease = new FeImportLease();
+		lease.setNode(ProvFePluginResource.KEY);
+		lease.setRevision(2L);
+		lease.setPublished(2L);
+		em.persist(lease);
+		em.flush();
+		Assertions.assertEquals(new EntityTag("0"), resource.getPrices(request, null, null, null, null, 0, 10).getEntityTag());
+		resource.lease.invalidate();
+		Assertions.assertEquals(new EntityTag("2"), resource.getPrices(request, null, null, null, null, 0, 10).getEntityTag());
+
+		// The regions committed by an unfinished import change the tag
+		lease.setRevision(3L);
+		lease.setCheckpointRegion("eu-west-0");
+		em.flush();
+		resource.lease.invalidate();
+		Assertions.assertEquals(new EntityTag("2-3-eu-west-0"), resource.getPrices(request, null, null, null, null, 0, 10).getEntityTag());
+	}
+
+	@Test
+	void getPricesNotModified() {
+		final var request = Mockito.mock(Request.class);
+		Mockito.doReturn(Response.notModified(new EntityTag("0"))).when(request).evaluatePreconditions(new EntityTag("0"));
+		Assertions.assertEquals(304, resource.getPrices(request, null, null, null, null, 0, 10).getStatus());
+	}
+
+	@Test
+	void cancelNotRunning() {
+		Assertions.assertFalse(resource.cancel());
+	}
+
+	@Test
+	void progress() {
+		final var resource2 = new ProvFePluginResource();
+		super.applicationContext.getAutowireCapableBeanFactory().autowireBean(resource2);
+		final var sse = Mockito.mock(Sse.class);
+		final var builder = Mockito.mock(OutboundSseEvent.Builder.class, Mockito.RETURNS_SELF);
+		final var event = Mockito.mock(OutboundSseEvent.class);
+		final var broadcaster = Mockito.mock(SseBroadcaster.class);
+		Mockito.doReturn(builder).when(sse).newEventBuilder();
+		Mockito.doReturn(event).when(builder).build();
+		Mockito.doReturn(broadcaster).when(sse).newBroadcaster();
+		final var sink1 = Mockito.mock(SseEventSink.class);
+		final var sink2 = Mockito.mock(SseEventSink.class);
+		try {
+			resource2.progress(sink1, sse);
+			resource2.progress(sink2, sse);
+
+			// Each client gets the current progress at once, then the events of a single shared broadcaster
+			Mockito.verify(sink1).send(event);
+			Mockito.verify(sink2).send(event);
+			Mockito.verify(builder, Mockito.times(2)).data(Mockito.contains("\"running\":false"));
+			Mockito.verify(builder, Mockito.times(2)).reconnectDelay(5000);
+			Mockito.verify(sse).newBroadcaster();
+			Mockito.verify(broadcaster).register(sink1);
+			Mockito.verify(broadcaster).register(sink2);
+
+			// The next snapshot is pushed to all the clients
+			resource2.progress.start();
+			Mockito.verify(broadcaster, Mockito.timeout(5000)).broadcast(event);
+		} finally {
+			resource2.progress.end(false);
+			resource2.shutdown();
+		}
+		Mockito.verify(broadcaster).close();
+	}
+
+	@Test
+	void progressNoRight() {
+		initSpringSecurityContext("any");
+		final var sink = Mockito.mock(SseEventSink.class);
+		Assertions.assertEquals("read-only-node",
+				Assertions.assertThrows(BusinessException.class, () -> resource.progress(sink, Mockito.mock(Sse.class))).getMessage());
+		Mockito.verifyNoInteractions(sink);
+	}
+
+	@Test
+	void cancelNoRight() {
+		initSpringSecurityContext("any");
+		Assertions.assertEquals("read-only-node", Assertions.assertThrows(BusinessException.class, () -> resource.cancel()).getMessage());
+	}
+
 	@Test
 	void create() {
 		resource.create(subscription);
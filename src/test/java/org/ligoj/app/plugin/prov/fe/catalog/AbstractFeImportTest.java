@@ -0,0 +1,123 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.fe.catalog;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+
+import jakarta.annotation.PostConstruct;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.reflect.MethodUtils;
+import org.apache.hc.core5.http.HttpStatus;
+import org.ligoj.app.AbstractServerTest;
+import org.ligoj.app.iam.model.CacheCompany;
+import org.ligoj.app.iam.model.CacheUser;
+import org.ligoj.app.model.DelegateNode;
+import org.ligoj.app.model.Node;
+import org.ligoj.app.model.Parameter;
+import org.ligoj.app.model.ParameterValue;
+import org.ligoj.app.model.Project;
+import org.ligoj.app.model.Subscription;
+import org.ligoj.app.plugin.prov.catalog.AbstractImportCatalogResource;
+import org.ligoj.app.plugin.prov.catalog.ImportCatalogResource;
+import org.ligoj.app.plugin.prov.fe.ProvFePluginResource;
+import org.ligoj.app.plugin.prov.model.ProvLocation;
+import org.ligoj.app.plugin.prov.model.ProvQuote;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+
+/**
+ * Fixture shared by the tests running the FE catalog import: the test data, the import resource and its task, and the
+ * mock of the FE sheets.
+ */
+abstract class AbstractFeImportTest extends AbstractServerTest {
+
+	@Autowired
+	protected ConfigurationResource configuration;
+
+	protected FePriceImport resource;
+
+	/**
+	 * Persist the test data, then build the import resource with a new import task.
+	 */
+	protected void prepareImport() throws IOException {
+		persistSystemEntities();
+		persistEntities("csv",
+				new Class[] { Node.class, Project.class, CacheCompany.class, CacheUser.class, DelegateNode.class,
+						Parameter.class, ProvLocation.class, Subscription.class, ParameterValue.class,
+						ProvQuote.class },
+				StandardCharsets.UTF_8);
+
+		// Mock catalog import helper
+		final var helper = new ImportCatalogResource();
+		applicationContext.getAutowireCapableBeanFactory().autowireBean(helper);
+		this.resource = initCatalog(helper, new FePriceImport());
+
+		clearAllCache();
+		initSpringSecurityContext(DEFAULT_USER);
+		resetImportTask();
+	}
+
+	private <T extends AbstractImportCatalogResource> T initCatalog(ImportCatalogResource importHelper, T catalog) {
+		applicationContext.getAutowireCapableBeanFactory().autowireBean(catalog);
+		catalog.setImportCatalogResource(importHelper);
+		MethodUtils.getMethodsListWithAnnotation(catalog.getClass(), PostConstruct.class).forEach(m -> {
+			try {
+				m.invoke(catalog);
+			} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
+				// Ignore;
+			}
+		});
+		return catalog;
+	}
+
+	/**
+	 * Start a new import task, as the catalog screen does before each import.
+	 */
+	protected void resetImportTask() {
+		this.resource.getImportCatalogResource().endTask(ProvFePluginResource.KEY, false);
+		this.resource.getImportCatalogResource().startTask(ProvFePluginResource.KEY, t -> {
+			t.setLocation(null);
+			t.setNbPrices(0);
+			t.setNbTypes(0);
+			t.setWorkload(0);
+			t.setDone(0);
+			t.setPhase(null);
+		});
+	}
+
+	/**
+	 * Serve the FE sheets of the test resources: the v1 sheets at the root, the v2 ones under <code>/v2</code> and the
+	 * swept catalog under <code>/sweep</code>.
+	 */
+	protected void mockServer() throws IOException {
+		configuration.put(FePriceImport.CONF_API_PRICES, "http://localhost:" + MOCK_PORT);
+		httpServer.stubFor(get(urlEqualTo("/prices/pricing-compute.csv"))
+				.willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(IOUtils.toString(
+						new ClassPathResource("mock-server/fe/pricing-compute.csv").getInputStream(), StandardCharsets.UTF_8))));
+		httpServer.stubFor(get(urlEqualTo("/prices/pricing-os.csv"))
+				.willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(IOUtils
+						.toString(new ClassPathResource("mock-server/fe/pricing-os.csv").getInputStream(), StandardCharsets.UTF_8))));
+		httpServer.stubFor(get(urlEqualTo("/v2/prices/pricing-compute.csv"))
+				.willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(IOUtils.toString(
+						new ClassPathResource("mock-server/fe/v2/pricing-compute.csv").getInputStream(), StandardCharsets.UTF_8))));
+		httpServer.stubFor(get(urlEqualTo("/v2/prices/pricing-os.csv"))
+				.willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(IOUtils.toString(
+						new ClassPathResource("mock-server/fe/v2/pricing-os.csv").getInputStream(), StandardCharsets.UTF_8))));
+		httpServer.stubFor(get(urlEqualTo("/sweep/prices/pricing-compute.csv"))
+				.willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(IOUtils.toString(
+						new ClassPathResource("mock-server/fe/sweep/pricing-compute.csv").getInputStream(), StandardCharsets.UTF_8))));
+		httpServer.stubFor(get(urlEqualTo("/sweep/prices/pricing-os.csv"))
+				.willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(IOUtils
+						.toString(new ClassPathResource("mock-server/fe/pricing-os.csv").getInputStream(), StandardCharsets.UTF_8))));
+		httpServer.start();
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.fe.catalog;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import jakarta.transaction.Transactional;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BOMInputStream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.test.annotation.Rollback;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import com.sun.management.ThreadMXBean;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Allocation budgets of the import, in bytes allocated by the importing thread: per parsed data row for the sheet
+ * parsing, per instance price for the unchanged refresh. Each budget is the baseline plus a margin absorbing the JDK
+ * and library variations. The measured allocations are logged to follow the baseline, and the budgets can be overridden
+ * with <code>-Dfe.budget.compute=N</code>, <code>-Dfe.budget.os=N</code> and <code>-Dfe.budget.install=N</code>.
+ */
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(locations = "classpath:/META-INF/spring/application-context-test.xml")
+@Rollback
+@Transactional
+@Slf4j
+class FeAllocationBudgetTest extends AbstractFeImportTest {
+
+	/**
+	 * Default budget of the compute sheet, in bytes per row.
+	 */
+	private static final long COMPUTE_BUDGET = 16 * 1024;
+
+	/**
+	 * Default budget of the OS sheet, in bytes per row. The OS rows have fewer columns than the compute ones.
+	 */
+	private static final long OS_BUDGET = 8 * 1024;
+
+	/**
+	 * Default budget of the unchanged refresh, in bytes per instance price.
+	 */
+	private static final long INSTALL_BUDGET = 24 * 1024;
+
+	/**
+	 * Amount of copies of the fixture in the synthetic catalog.
+	 */
+	private static final int SCALE = 50;
+
+	@BeforeEach
+	void prepareData() throws IOException {
+		prepareImport();
+	}
+
+	@Test
+	void compute() throws IOException {
+		assertBudget("compute", COMPUTE_BUDGET, "mock-server/fe/v2/pricing-compute.csv", r -> {
+			final var csvReader = new CsvForBeanFe(r);
+			final var result = new ArrayList<CsvPrice>();
+			for (var csv = csvReader.read(); csv != null; csv = csvReader.read()) {
+				result.add(csv);
+			}
+			return result;
+		});
+	}
+
+	@Test
+	void os() throws IOException {
+		assertBudget("os", OS_BUDGET, "mock-server/fe/v2/pricing-os.csv", r -> {
+			final var csvReader = new CsvOsForBeanFe(r);
+			final var result = new ArrayList<CsvOsPrice>();
+			for (var csv = csvReader.read(); csv != null; csv = csvReader.read()) {
+				result.add(csv);
+			}
+			return result;
+		});
+	}
+
+	@Test
+	void install() throws Exception {
+		mockServer();
+		resource.install(false);
+		em.flush();
+		em.clear();
+		final var prices = em.createQuery("SELECT COUNT(id) FROM ProvInstancePrice", Long.class).getSingleResult();
+		final var budget = Long.getLong("fe.budget.install", INSTALL_BUDGET);
+
+		// The refresh skips the parsing and the merge of the unchanged prices
+		resetImportTask();
+		final var threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		final var start = threads.getCurrentThreadAllocatedBytes();
+		resource.install(false);
+		final var perPrice = (threads.getCurrentThreadAllocatedBytes() - start) / prices;
+		log.info("FE unchanged refresh allocates {} bytes per price, budget is {}", perPrice, budget);
+		Assertions.assertTrue(perPrice <= budget, () -> "Unchanged refresh allocates " + perPrice + " bytes per price, budget is " + budget);
+	}
+
+	/**
+	 * Parser of a whole sheet.
+	 */
+	@FunctionalInterface
+	private interface SheetParser {
+		List<?> read(BufferedReader reader) throws IOException;
+	}
+
+	private void assertBudget(final String sheet, final long defaultBudget, final String fixture, final SheetParser parser)
+			throws IOException {
+		final var budget = Long.getLong("fe.budget." + sheet, defaultBudget);
+		final var content = IOUtils.toString(BOMInputStream.builder().setInputStream(new ClassPathResource(fixture).getInputStream()).get(),
+				StandardCharsets.UTF_8);
+		final var synthetic = content.repeat(SCALE);
+
+		// Warm up the parser, then measure the fixture and the synthetic catalog
+		parse(content, parser);
+		final var perRow = allocatedPerRow(content, parser);
+		final var scaledPerRow = allocatedPerRow(synthetic, parser);
+		log.info("FE {} sheet parsing allocates {} bytes per row, {} at scale {}, budget is {}", sheet, perRow, scaledPerRow, SCALE, budget);
+		Assertions.assertTrue(perRow <= budget, () -> sheet + " sheet parsing allocates " + perRow + " bytes per row, budget is " + budget);
+		Assertions.assertTrue(scaledPerRow <= budget,
+				() -> sheet + " sheet parsing allocates " + scaledPerRow + " bytes per row at scale " + SCALE + ", budget is " + budget);
+	}
+
+	private long allocatedPerRow(final String content, final SheetParser parser) throws IOException {
+		final var threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		final var start = threads.getCurrentThreadAllocatedBytes();
+		final var rows = parse(content, parser);
+		final var allocated = threads.getCurrentThreadAllocatedBytes() - start;
+		Assertions.assertTrue(rows > 0);
+		return allocated / rows;
+	}
+
+	/**
+	 * Return the amount of data rows parsed from the given content, the header and separator rows are not counted.
+	 */
+	private int parse(final String content, final SheetParser parser) throws IOException {
+		try (var reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)),
+				StandardCharsets.UTF_8))) {
+			return parser.read(reader).size();
+		}
+	}
+}
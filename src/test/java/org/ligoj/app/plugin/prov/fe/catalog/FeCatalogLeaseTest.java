@@ -0,0 +1,164 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.fe.catalog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.ligoj.app.AbstractServerTest;
+import org.ligoj.app.plugin.prov.fe.ProvFePluginResource;
+import org.ligoj.app.plugin.prov.fe.dao.FeImportLeaseRepository;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+/**
+ * Test class of {@link FeCatalogLease}. Each application node is a distinct Spring context with its own lease, sharing
+ * the embedded database of the test context. There is no test transaction: each lease operation is committed, as it is
+ * between real application nodes.
+ */
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(locations = "classpath:/META-INF/spring/application-context-test.xml")
+class FeCatalogLeaseTest extends AbstractServerTest {
+
+	private static final String NODE = ProvFePluginResource.KEY;
+
+	@Autowired
+	private ConfigurationResource configuration;
+
+	@Autowired
+	private FeImportLeaseRepository repository;
+
+	private final List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+
+	private FeCatalogLease node1;
+
+	private FeCatalogLease node2;
+
+	@BeforeEach
+	void startNodes() {
+		repository.deleteAll();
+		node1 = newApplicationNode();
+		node2 = newApplicationNode();
+	}
+
+	@AfterEach
+	void stopNodes() {
+		nodes.forEach(ConfigurableApplicationContext::close);
+		repository.deleteAll();
+		configuration.delete(FeCatalogLease.CONF_LEASE_DURATION);
+	}
+
+	private FeCatalogLease newApplicationNode() {
+		final var context = new AnnotationConfigApplicationContext();
+		context.setParent(applicationContext);
+		context.register(FeCatalogLease.class);
+		context.refresh();
+		nodes.add(context);
+		return context.getBean(FeCatalogLease.class);
+	}
+
+	private String getOwner() {
+		return repository.findById(NODE).orElseThrow().getOwner();
+	}
+
+	@Test
+	void acquire() {
+		Assertions.assertNotEquals(node1.getOwner(), node2.getOwner());
+
+		// First import
+		Assertions.assertTrue(node1.acquire(NODE));
+		Assertions.assertFalse(node2.acquire(NODE));
+		Assertions.assertTrue(node1.acquire(NODE));
+		node1.heartbeat(NODE);
+		Assertions.assertFalse(node2.acquire(NODE));
+		Assertions.assertNull(node2.getCompleted(NODE));
+
+		// Completion marker is visible from the other node
+		node1.release(NODE, true);
+		final var completed = node2.getCompleted(NODE);
+		Assertions.assertNotNull(completed);
+
+		// Failed import of the other node does not publish a completion marker
+		Assertions.assertTrue(node2.acquire(NODE));
+		Assertions.assertFalse(node1.acquire(NODE));
+		node2.release(NODE, false);
+		Assertions.assertEquals(completed, node1.getCompleted(NODE));
+		Assertions.assertTrue(node1.acquire(NODE));
+	}
+
+	@Test
+	void acquireConcurrent() throws Exception {
+		final var executor = Executors.newFixedThreadPool(2);
+		try {
+			// First import, then an import after a released lease
+			for (var round = 0; round < 2; round++) {
+				final var start = new CyclicBarrier(2);
+				final var acquired1 = executor.submit(() -> {
+					start.await();
+					return node1.acquire(NODE);
+				});
+				final var acquired2 = executor.submit(() -> {
+					start.await();
+					return node2.acquire(NODE);
+				});
+
+				// Exactly one node wins the race
+				final var won1 = acquired1.get(10, TimeUnit.SECONDS);
+				Assertions.assertNotEquals(won1, acquired2.get(10, TimeUnit.SECONDS));
+				final var winner = won1 ? node1 : node2;
+				Assertions.assertEquals(winner.getOwner(), getOwner());
+				winner.release(NODE, false);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void checkpoint() {
+		Assertions.assertTrue(node1.acquire(NODE));
+		Assertions.assertNull(node1.getCheckpoint(NODE, "digest1"));
+		node1.checkpoint(NODE, "digest1", "eu-west-0");
+
+		// Only the lease owner records a checkpoint
+		Assertions.assertThrows(CancellationException.class, () -> node2.checkpoint(NODE, "digest1", "eu-west-1"));
+		Assertions.assertThrows(CancellationException.class, () -> node2.nextRevision(NODE));
+
+		// The checkpoint survives a failed import, only for the same catalog
+		node1.release(NODE, false);
+		Assertions.assertEquals("eu-west-0", node2.getCheckpoint(NODE, "digest1"));
+		Assertions.assertNull(node2.getCheckpoint(NODE, "digest2"));
+
+		// A successful import clears the checkpoint
+		Assertions.assertTrue(node2.acquire(NODE));
+		node2.release(NODE, true);
+		Assertions.assertNull(node1.getCheckpoint(NODE, "digest1"));
+	}
+
+	@Test
+	void acquireExpired() {
+		configuration.put(FeCatalogLease.CONF_LEASE_DURATION, "-60");
+		Assertions.assertTrue(node1.acquire(NODE));
+
+		// No heartbeat in time according to the database clock, the lease is taken by the other node
+		Assertions.assertTrue(node2.acquire(NODE));
+
+		// Lost lease, the heartbeat fails and has no effect
+		Assertions.assertThrows(CancellationException.class, () -> node1.heartbeat(NODE));
+		Assertions.assertEquals(node2.getOwner(), getOwner());
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.fe.catalog;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.ligoj.app.plugin.prov.model.VmOs;
+import org.springframework.core.io.ClassPathResource;
+
+/**
+ * Test class of {@link FeCatalogSnapshot}
+ */
+class FeCatalogSnapshotTest {
+
+	@Test
+	void writeRead() throws IOException {
+		final var osPrice = new CsvOsPrice();
+		osPrice.setProduct("Paris - t2.micro (1 vCPU, 1GB RAM)");
+		osPrice.setOs(VmOs.SUSE);
+		osPrice.setSoftware("SAP");
+		osPrice.setCost1h(0.05);
+		final var osPrice2 = new CsvOsPrice();
+		osPrice2.setProduct("Paris - t2.micro (1 vCPU, 1GB RAM)");
+		osPrice2.setOs(VmOs.WINDOWS);
+		osPrice2.setCost1m(39d);
+		final var price = new CsvPrice();
+		price.setProduct("Paris - t2.micro (1 vCPU, 1GB RAM)");
+		price.setCpu(1);
+		price.setRam(1);
+		price.setConvertible(true);
+		price.setCost1h(0.0103);
+		price.setCost3yPerMonthConvertible(3.08);
+
+		final var output = new ByteArrayOutputStream();
+		new FeCatalogSnapshot("key", List.of(osPrice, osPrice2), List.of(price)).write(output);
+		final var snapshot = FeCatalogSnapshot.read(new ByteArrayInputStream(output.toByteArray()));
+
+		Assertions.assertEquals("key", snapshot.getKey());
+		Assertions.assertEquals(2, snapshot.getOsPrices().size());
+		final var readOs = snapshot.getOsPrices().get(0);
+		Assertions.assertEquals("Paris - t2.micro (1 vCPU, 1GB RAM)", readOs.getProduct());
+		Assertions.assertEquals(VmOs.SUSE, readOs.getOs());
+		Assertions.assertEquals("SAP", readOs.getSoftware());
+		Assertions.assertEquals(0.05, readOs.getCost1h());
+		Assertions.assertNull(readOs.getCost1m());
+		final var readOs2 = snapshot.getOsPrices().get(1);
+		Assertions.assertEquals(VmOs.WINDOWS, readOs2.getOs());
+		Assertions.assertNull(readOs2.getSoftware());
+		Assertions.assertEquals(39d, readOs2.getCost1m());
+
+		Assertions.assertEquals(1, snapshot.getPrices().size());
+		final var read = snapshot.getPrices().get(0);
+		Assertions.assertEquals("Paris - t2.micro (1 vCPU, 1GB RAM)", read.getProduct());
+		Assertions.assertEquals(1, read.getCpu());
+		Assertions.assertEquals(1, read.getRam());
+		Assertions.assertTrue(read.isConvertible());
+		Assertions.assertEquals(0.0103, read.getCost1h());
+		Assertions.assertNull(read.getCost1m());
+		Assertions.assertEquals(3.08, read.getCost3yPerMonthConvertible());
+	}
+
+	@Test
+	void readOtherFormat() throws IOException {
+		Assertions.assertNull(FeCatalogSnapshot.read(new ByteArrayInputStream(new byte[8])));
+	}
+
+	@Test
+	void readPreviousVersion() throws IOException {
+		final var output = new ByteArrayOutputStream();
+		new FeCatalogSnapshot("key", List.of(), List.of()).write(output);
+		final var content = output.toByteArray();
+
+		// Same format, written by the previous parser
+		content[7] = (byte) (FeCatalogSnapshot.VERSION - 1);
+		Assertions.assertNull(FeCatalogSnapshot.read(new ByteArrayInputStream(content)));
+	}
+
+	@Test
+	void build() throws IOException {
+		final var osContent = new ClassPathResource("mock-server/fe/pricing-os.csv").getContentAsByteArray();
+		final var computeContent = new ClassPathResource("mock-server/fe/pricing-compute.csv").getContentAsByteArray();
+		final var snapshot = FeCatalogSnapshotBuilder.build(osContent, computeContent);
+		Assertions.assertEquals(FeCatalogSnapshot.digest(osContent, computeContent, ".*|.*|.*".getBytes(StandardCharsets.UTF_8)), snapshot.getKey());
+		Assertions.assertFalse(snapshot.getOsPrices().isEmpty());
+		Assertions.assertFalse(snapshot.getPrices().isEmpty());
+	}
+
+	@Test
+	void buildMain() throws IOException, URISyntaxException {
+		final var api = Files.createTempDirectory("fe");
+		final var prices = Files.createDirectories(api.resolve("prices"));
+		final var file = api.resolve("fe/catalog.bin");
+		try {
+			for (final var sheet : List.of("pricing-os.csv", "pricing-compute.csv")) {
+				try (var input = new ClassPathResource("mock-server/fe/" + sheet).getInputStream()) {
+					Files.copy(input, prices.resolve(sheet));
+				}
+			}
+			FeCatalogSnapshotBuilder.main(new String[] { file.toString(), api.toUri().toString() });
+			try (var input = Files.newInputStream(file)) {
+				final var snapshot = FeCatalogSnapshot.read(input);
+				Assertions.assertEquals(FeCatalogSnapshotBuilder.build(Files.readAllBytes(prices.resolve("pricing-os.csv")),
+						Files.readAllBytes(prices.resolve("pricing-compute.csv"))).getKey(), snapshot.getKey());
+				Assertions.assertFalse(snapshot.getPrices().isEmpty());
+			}
+		} finally {
+			FileUtils.deleteDirectory(api.toFile());
+		}
+	}
+
+	@Test
+	void digest() {
+		Assertions.assertEquals(64, FeCatalogSnapshot.digest("a".getBytes(), "b".getBytes()).length());
+		Assertions.assertEquals(FeCatalogSnapshot.digest("ab".getBytes()), FeCatalogSnapshot.digest("a".getBytes(), "b".getBytes()));
+	}
+}
@@ -0,0 +1,56 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.fe.catalog;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class of {@link FeCountingInputStream}
+ */
+class FeCountingInputStreamTest {
+
+	@Test
+	void read() throws IOException {
+		final var notified = new ArrayList<Long>();
+		try (var input = new FeCountingInputStream(new ByteArrayInputStream(new byte[250]), 100, notified::add)) {
+			Assertions.assertEquals(0, input.read());
+			Assertions.assertEquals(249, input.readAllBytes().length);
+			Assertions.assertEquals(-1, input.read());
+			Assertions.assertEquals(250, input.getCount());
+		}
+
+		// One notification per crossed step, then the final count once
+		Assertions.assertEquals(List.of(250L), notified.subList(notified.size() - 1, notified.size()));
+		Assertions.assertTrue(notified.size() <= 3);
+		Assertions.assertEquals(notified.size(), notified.stream().distinct().count());
+	}
+
+	@Test
+	void readDeadline() throws IOException {
+		final var notified = new ArrayList<Long>();
+		try (var input = new FeCountingInputStream(new ByteArrayInputStream(new byte[250]), 100, notified::add,
+				() -> System.currentTimeMillis() - 1)) {
+			Assertions.assertEquals(99, input.readNBytes(99).length);
+
+			// The deadline is checked at the first crossed step
+			final var e = Assertions.assertThrows(CancellationException.class, input::readAllBytes);
+			Assertions.assertTrue(e.getMessage().contains("exceeded its time budget"));
+		}
+		Assertions.assertEquals(1, notified.size());
+	}
+
+	@Test
+	void readNoDeadline() throws IOException {
+		try (var input = new FeCountingInputStream(new ByteArrayInputStream(new byte[250]), 100, c -> {}, () -> 0)) {
+			Assertions.assertEquals(250, input.readAllBytes().length);
+		}
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.fe.catalog;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class of {@link FeImportProgress}
+ */
+class FeImportProgressTest {
+
+	@Test
+	void rowsRateLimited() throws InterruptedException {
+		final var progress = new FeImportProgress();
+		progress.start();
+		progress.rows(0, 1000);
+		final var version = progress.get().version();
+		Assertions.assertEquals(-1, progress.get().eta());
+
+		// Too close to the previous snapshot
+		progress.rows(10, 1000);
+		Assertions.assertEquals(version, progress.get().version());
+
+		// Published after the interval, with a throughput
+		Thread.sleep(FeImportProgress.PUBLISH_INTERVAL + 10);
+		progress.rows(500, 1000);
+		final var snapshot = progress.get();
+		Assertions.assertEquals(version + 1, snapshot.version());
+		Assertions.assertEquals(500, snapshot.rows());
+		Assertions.assertTrue(snapshot.throughput() > 0);
+		Assertions.assertTrue(snapshot.eta() >= 0);
+
+		// Completion is never dropped
+		progress.rows(1000, 1000);
+		Assertions.assertEquals(1000, progress.get().rows());
+		Assertions.assertEquals(0, progress.get().eta());
+		progress.end(true);
+		Assertions.assertFalse(progress.get().running());
+		Assertions.assertTrue(progress.get().success());
+	}
+
+	@Test
+	void bytes() {
+		final var progress = new FeImportProgress();
+		progress.start();
+		progress.bytes(100, -1);
+		Assertions.assertEquals(0, progress.get().bytes());
+		progress.bytes(200, 200);
+		Assertions.assertEquals(200, progress.get().bytes());
+		Assertions.assertEquals(200, progress.get().totalBytes());
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.fe.catalog;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.commons.io.input.BOMInputStream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+/**
+ * Test class of {@link FeSheetSchemaRegistry}
+ */
+class FeSheetSchemaRegistryTest {
+
+	@Test
+	void detect() throws IOException {
+		Assertions.assertEquals("compute-v1", detect("compute", "mock-server/fe/pricing-compute.csv").getName());
+		Assertions.assertEquals("os-v1", detect("os", "mock-server/fe/pricing-os.csv").getName());
+		Assertions.assertEquals("compute-v2", detect("compute", "mock-server/fe/v2/pricing-compute.csv").getName());
+		Assertions.assertEquals("os-v2", detect("os", "mock-server/fe/v2/pricing-os.csv").getName());
+	}
+
+	@Test
+	void detectBytes() throws IOException {
+		try (var input = new ClassPathResource("mock-server/fe/v2/pricing-os.csv").getInputStream()) {
+			final var schema = FeSheetSchemaRegistry.detect("os", input.readNBytes(FeSheetSchemaRegistry.READ_AHEAD));
+			Assertions.assertEquals("os-v2", schema.getName());
+			Assertions.assertFalse(schema.isHeader());
+		}
+	}
+
+	@Test
+	void detectReset() throws IOException {
+		try (var reader = new BufferedReader(new StringReader("Product;vCPU;RAM (GB)\nfoo"))) {
+			Assertions.assertEquals("compute-v2-en", FeSheetSchemaRegistry.detect("compute", reader).getName());
+			Assertions.assertEquals("Product;vCPU;RAM (GB)", reader.readLine());
+		}
+	}
+
+	@Test
+	void detectUnknown() {
+		Assertions.assertThrows(IOException.class, () -> FeSheetSchemaRegistry.detect("compute", new BufferedReader(new StringReader("foo;bar"))));
+		Assertions.assertThrows(IOException.class, () -> FeSheetSchemaRegistry.detect("os", new byte[0]));
+
+		// The header of another sheet
+		Assertions.assertThrows(IOException.class, () -> detect("os", "mock-server/fe/pricing-compute.csv"));
+	}
+
+	@Test
+	void detectBeyondReadAhead() {
+		final var content = ";".repeat(FeSheetSchemaRegistry.READ_AHEAD) + "\nproduct;vcpu;ram (GB)";
+		Assertions.assertThrows(IOException.class, () -> FeSheetSchemaRegistry.detect("compute", new BufferedReader(new StringReader(content))));
+	}
+
+	@Test
+	void fingerprint() {
+		Assertions.assertEquals("produit|heureensusdesprixlinux|ramgb",
+				FeSheetSchemaRegistry.fingerprint(List.of("Produit", "€/Heure en sus des Prix Linux\n[5][5bis]", "RAM (GB)", "ignored"), 3));
+	}
+
+	@Test
+	void readV2() throws IOException {
+		try (var reader = toReader("mock-server/fe/v2/pricing-compute.csv")) {
+			final var price = new CsvForBeanFe(reader).read();
+			Assertions.assertNotNull(price.getProduct());
+			Assertions.assertTrue(price.getCpu() > 0);
+			Assertions.assertTrue(price.getRam() > 0);
+		}
+		try (var reader = toReader("mock-server/fe/v2/pricing-os.csv")) {
+			final var price = new CsvOsForBeanFe(reader).read();
+			Assertions.assertNotNull(price.getProduct());
+			Assertions.assertNotNull(price.getOs());
+		}
+	}
+
+	@Test
+	void indexOf() {
+		final var schema = new FeSheetSchema("test", "os", "product", false, new String[] { "product", FeSheetSchema.DROP }, 2, List.of());
+		Assertions.assertEquals(0, schema.indexOf("product"));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> schema.indexOf("cpu"));
+	}
+
+	private FeSheetSchema detect(final String sheet, final String fixture) throws IOException {
+		try (var reader = toReader(fixture)) {
+			return FeSheetSchemaRegistry.detect(sheet, reader);
+		}
+	}
+
+	private BufferedReader toReader(final String fixture) throws IOException {
+		return new BufferedReader(new InputStreamReader(
+				BOMInputStream.builder().setInputStream(new ClassPathResource(fixture).getInputStream()).get(), StandardCharsets.UTF_8));
+	}
+}
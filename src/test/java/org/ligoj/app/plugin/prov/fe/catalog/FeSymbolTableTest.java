@@ -0,0 +1,23 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.fe.catalog;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class of {@link FeSymbolTable}
+ */
+class FeSymbolTableTest {
+
+	@Test
+	void intern() {
+		final var symbols = new FeSymbolTable();
+		final var value = new String("Paris");
+		Assertions.assertSame(value, symbols.intern(value));
+		Assertions.assertSame(value, symbols.intern(new String("Paris")));
+		Assertions.assertNull(symbols.intern(null));
+		Assertions.assertEquals(1, symbols.size());
+	}
+}
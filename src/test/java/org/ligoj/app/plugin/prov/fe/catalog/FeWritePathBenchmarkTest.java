@@ -0,0 +1,236 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.fe.catalog;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import jakarta.transaction.Transactional;
+
+import org.hibernate.Session;
+import org.hibernate.StatelessSession;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.ligoj.app.plugin.prov.dao.ProvInstancePriceRepository;
+import org.ligoj.app.plugin.prov.model.ProvInstancePrice;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.Rollback;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Throughput benchmark of the instance price write path. The FE fixtures are imported once to get the terms, types and
+ * locations, then a synthetic catalog derived from these prices is replayed through each write strategy. The
+ * <code>BULK</code> strategy only approximates the proposed bulk upsert, see {@link Strategy#BULK}. Disabled by
+ * default, run it with <code>mvn test -Dtest=FeWritePathBenchmarkTest -Dfe.benchmark=true</code>, and
+ * <code>-Dfe.benchmark.rows=N</code> for the catalog size.
+ */
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(locations = "classpath:/META-INF/spring/application-context-test.xml")
+@Rollback
+@Transactional
+@EnabledIfSystemProperty(named = "fe.benchmark", matches = "true")
+@Slf4j
+class FeWritePathBenchmarkTest extends AbstractFeImportTest {
+
+	/**
+	 * Code suffix of the synthetic prices.
+	 */
+	private static final String SYNTHETIC = "/bench-";
+
+	/**
+	 * JDBC batch size of the batched strategy.
+	 */
+	private static final int BATCH_SIZE = 50;
+
+	/**
+	 * Write strategy of the instance prices.
+	 */
+	private enum Strategy {
+		/**
+		 * One repository save per new or changed entity, as <code>saveAsNeeded</code>.
+		 */
+		ENTITY,
+
+		/**
+		 * Managed entities flushed and cleared by JDBC batches.
+		 */
+		BATCH,
+
+		/**
+		 * Blind insert or update of all rows through a stateless session, bypassing the persistence context. This is a
+		 * stand-in measuring the cost without persistence context, not the proposed bulk upsert: it still sends one
+		 * statement per row, where the upsert would merge a whole batch in one statement.
+		 */
+		BULK
+	}
+
+	/**
+	 * Replayed catalog case.
+	 */
+	private enum Case {
+		/**
+		 * All prices are new.
+		 */
+		FIRST_INSTALL(-1),
+
+		/**
+		 * All prices exist with the same cost.
+		 */
+		UNCHANGED(0),
+
+		/**
+		 * All prices exist, one of ten has a new cost.
+		 */
+		CHANGED_10(10);
+
+		private final int changeEvery;
+
+		Case(final int changeEvery) {
+			this.changeEvery = changeEvery;
+		}
+	}
+
+	@Autowired
+	private ProvInstancePriceRepository ipRepository;
+
+	@BeforeEach
+	void prepareData() throws IOException {
+		prepareImport();
+	}
+
+	@Test
+	void writePath() throws Exception {
+		// Reference data from the FE fixtures
+		mockServer();
+		resource.install(false);
+		em.flush();
+		em.clear();
+		final var templates = ipRepository.findAll();
+		Assertions.assertFalse(templates.isEmpty());
+
+		final var rows = Integer.getInteger("fe.benchmark.rows", 20000);
+		final var statistics = em.unwrap(Session.class).getSessionFactory().getStatistics();
+		statistics.setStatisticsEnabled(true);
+		log.info("FE write path benchmark, {} rows, {} template prices", rows, templates.size());
+		log.info(String.format("%-8s %-14s %12s %12s %10s %12s", "strategy", "case", "rows/s", "statements", "flushes", "flush(ms)"));
+		for (final var strategy : Strategy.values()) {
+			for (final var c : Case.values()) {
+				final var result = run(strategy, c, templates, rows, statistics);
+				log.info(String.format("%-8s %-14s %12.0f %12d %10d %12d", strategy, c, result[0], (long) result[1], (long) result[2],
+						(long) result[3]));
+			}
+			Assertions.assertEquals(rows, countSynthetic());
+			deleteSynthetic();
+		}
+	}
+
+	/**
+	 * Replay the synthetic catalog and return the rows per second, the statements, the flushes and the flush time.
+	 */
+	private double[] run(final Strategy strategy, final Case c, final List<ProvInstancePrice> templates, final int rows,
+			final Statistics statistics) {
+		// Previous prices, loaded as the import does
+		final Map<String, ProvInstancePrice> previous = c == Case.FIRST_INSTALL ? Map.of()
+				: em.createQuery("FROM ProvInstancePrice WHERE code LIKE :code", ProvInstancePrice.class).setParameter("code", "%" + SYNTHETIC + "%")
+						.getResultList().stream().collect(Collectors.toMap(ProvInstancePrice::getCode, Function.identity()));
+		statistics.clear();
+		var flushTime = 0L;
+		final var start = System.nanoTime();
+		if (strategy == Strategy.BULK) {
+			final var session = em.unwrap(Session.class);
+			try (StatelessSession stateless = session.getSessionFactory().withStatelessOptions()
+					.connection(session.doReturningWork(connection -> connection)).openStatelessSession()) {
+				stateless.setJdbcBatchSize(BATCH_SIZE);
+				for (var i = 0; i < rows; i++) {
+					final var price = toPrice(templates, i, c, previous);
+					if (price.getId() == null) {
+						stateless.insert(price);
+					} else {
+						stateless.update(price);
+					}
+				}
+			}
+		} else {
+			final var session = em.unwrap(Session.class);
+			session.setJdbcBatchSize(strategy == Strategy.BATCH ? BATCH_SIZE : null);
+			final var changed = new ArrayList<ProvInstancePrice>();
+			for (var i = 0; i < rows; i++) {
+				final var price = toPrice(templates, i, c, previous);
+				final var existing = previous.get(price.getCode());
+				if (existing == null || Double.compare(existing.getCost(), price.getCost()) != 0) {
+					if (existing != null) {
+						existing.setCost(price.getCost());
+					}
+					changed.add(ipRepository.save(existing == null ? price : existing));
+				}
+				if (strategy == Strategy.BATCH && changed.size() == BATCH_SIZE) {
+					// The loaded previous prices must stay managed
+					flushTime += flush(previous.isEmpty());
+					changed.clear();
+				}
+			}
+			flushTime += flush(strategy == Strategy.BATCH);
+			session.setJdbcBatchSize(null);
+		}
+		final var elapsed = System.nanoTime() - start;
+		em.clear();
+		return new double[] { rows * 1e9 / elapsed, statistics.getPrepareStatementCount(), statistics.getFlushCount(), flushTime / 1000000 };
+	}
+
+	private long flush(final boolean clear) {
+		final var start = System.nanoTime();
+		em.flush();
+		if (clear) {
+			em.clear();
+		}
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Return the synthetic price of the given row, built from a template. The existing price keeps its identifier.
+	 */
+	private ProvInstancePrice toPrice(final List<ProvInstancePrice> templates, final int row, final Case c,
+			final Map<String, ProvInstancePrice> previous) {
+		final var template = templates.get(row % templates.size());
+		final var price = new ProvInstancePrice();
+		price.setCode(template.getCode() + SYNTHETIC + row);
+		price.setLocation(template.getLocation());
+		price.setOs(template.getOs());
+		price.setSoftware(template.getSoftware());
+		price.setTerm(template.getTerm());
+		price.setTenancy(template.getTenancy());
+		price.setType(template.getType());
+		price.setPeriod(template.getPeriod());
+		price.setInitialCost(template.getInitialCost());
+		price.setCost(c.changeEvery > 0 && row % c.changeEvery == 0 ? template.getCost() + 1 : template.getCost());
+		price.setCostPeriod(template.getCostPeriod());
+		final var existing = previous.get(price.getCode());
+		if (existing != null) {
+			price.setId(existing.getId());
+		}
+		return price;
+	}
+
+	private long countSynthetic() {
+		return em.createQuery("SELECT COUNT(id) FROM ProvInstancePrice WHERE code LIKE :code", Long.class).setParameter("code", "%" + SYNTHETIC + "%")
+				.getSingleResult();
+	}
+
+	private void deleteSynthetic() {
+		em.createQuery("DELETE FROM ProvInstancePrice WHERE code LIKE :code").setParameter("code", "%" + SYNTHETIC + "%").executeUpdate();
+		em.flush();
+		em.clear();
+	}
+}
@@ -10,37 +10,36 @@ import static org.ligoj.app.plugin.prov.quote.instance.QuoteInstanceQuery.builde
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
-import java.nio.charset.StandardCharsets;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
 
-import jakarta.annotation.PostConstruct;
 import jakarta.transaction.Transactional;
 
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang3.reflect.MethodUtils;
+import org.apache.commons.lang3.reflect.FieldUtils;
 import org.apache.hc.core5.http.HttpStatus;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.ligoj.app.AbstractServerTest;
-import org.ligoj.app.iam.model.CacheCompany;
-import org.ligoj.app.iam.model.CacheUser;
-import org.ligoj.app.model.DelegateNode;
-import org.ligoj.app.model.Node;
-import org.ligoj.app.model.Parameter;
-import org.ligoj.app.model.ParameterValue;
-import org.ligoj.app.model.Project;
-import org.ligoj.app.model.Subscription;
+import org.junit.jupiter.api.io.TempDir;
 import org.ligoj.app.plugin.prov.AbstractLookup;
 import org.ligoj.app.plugin.prov.ProvResource;
 import org.ligoj.app.plugin.prov.QuoteVo;
-import org.ligoj.app.plugin.prov.catalog.AbstractImportCatalogResource;
-import org.ligoj.app.plugin.prov.catalog.ImportCatalogResource;
 import org.ligoj.app.plugin.prov.dao.ProvQuoteRepository;
 import org.ligoj.app.plugin.prov.fe.ProvFePluginResource;
+import org.ligoj.app.plugin.prov.fe.dao.FePriceHistoryRepository;
+import org.ligoj.app.plugin.prov.fe.dao.FeRetiredPriceRepository;
+import org.ligoj.app.plugin.prov.fe.model.FeImportLease;
+import org.ligoj.app.plugin.prov.fe.model.FePriceChange;
+import org.ligoj.app.plugin.prov.fe.model.FePriceHistory;
+import org.ligoj.app.plugin.prov.fe.model.FeRetiredPrice;
 import org.ligoj.app.plugin.prov.model.ProvLocation;
-import org.ligoj.app.plugin.prov.model.ProvQuote;
 import org.ligoj.app.plugin.prov.model.ProvQuoteInstance;
 import org.ligoj.app.plugin.prov.model.ProvQuoteStorage;
 import org.ligoj.app.plugin.prov.model.ProvStorageOptimized;
@@ -52,9 +51,12 @@ import org.ligoj.app.plugin.prov.model.VmOs;
 import org.ligoj.app.plugin.prov.quote.instance.ProvQuoteInstanceResource;
 import org.ligoj.app.plugin.prov.quote.instance.QuoteInstanceEditionVo;
 import org.ligoj.app.plugin.prov.quote.support.ProvQuoteSupportResource;
-import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.test.annotation.Rollback;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
@@ -66,12 +68,10 @@ import org.springframework.test.context.junit.jupiter.SpringExtension;
 @ContextConfiguration(locations = "classpath:/META-INF/spring/application-context-test.xml")
 @Rollback
 @Transactional
-class ProvFePriceImportTest extends AbstractServerTest {
+class ProvFePriceImportTest extends AbstractFeImportTest {
 
 	private static final double DELTA = 0.001;
 
-	private FePriceImport resource;
-
 	@Autowired
 	private ProvResource provResource;
 
@@ -85,29 +85,27 @@ class ProvFePriceImportTest extends AbstractServerTest {
 	private ProvQuoteRepository repository;
 
 	@Autowired
-	private ConfigurationResource configuration;
+	private FePriceIndex priceIndex;
+
+	@Autowired
+	private FeQuoteCostUpdater quoteCostUpdater;
+
+	@Autowired
+	private FePriceHistoryRepository historyRepository;
+
+	@Autowired
+	private FeCatalogLease lease;
+
+	@Autowired
+	private FeRetiredPriceRepository retiredRepository;
 
 	protected int subscription;
 
 	@BeforeEach
 	void prepareData() throws IOException {
-		persistSystemEntities();
-		persistEntities("csv",
-				new Class[] { Node.class, Project.class, CacheCompany.class, CacheUser.class, DelegateNode.class,
-						Parameter.class, ProvLocation.class, Subscription.class, ParameterValue.class,
-						ProvQuote.class },
-				StandardCharsets.UTF_8);
+		prepareImport();
 		this.subscription = getSubscription("gStack");
 
-		// Mock catalog import helper
-		final var helper = new ImportCatalogResource();
-		applicationContext.getAutowireCapableBeanFactory().autowireBean(helper);
-		this.resource = initCatalog(helper, new FePriceImport());
-
-		clearAllCache();
-		initSpringSecurityContext(DEFAULT_USER);
-		resetImportTask();
-
 		final var usage12 = new ProvUsage();
 		usage12.setName("12month");
 		usage12.setRate(100);
@@ -140,31 +138,6 @@ class ProvFePriceImportTest extends AbstractServerTest {
 		em.clear();
 	}
 
-	private <T extends AbstractImportCatalogResource> T initCatalog(ImportCatalogResource importHelper, T catalog) {
-		applicationContext.getAutowireCapableBeanFactory().autowireBean(catalog);
-		catalog.setImportCatalogResource(importHelper);
-		MethodUtils.getMethodsListWithAnnotation(catalog.getClass(), PostConstruct.class).forEach(m -> {
-			try {
-				m.invoke(catalog);
-			} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
-				// Ignore;
-			}
-		});
-		return catalog;
-	}
-
-	private void resetImportTask() {
-		this.resource.getImportCatalogResource().endTask("service:prov:fe", false);
-		this.resource.getImportCatalogResource().startTask("service:prov:fe", t -> {
-			t.setLocation(null);
-			t.setNbPrices(0);
-			t.setNbTypes(0);
-			t.setWorkload(0);
-			t.setDone(0);
-			t.setPhase(null);
-		});
-	}
-
 	@Test
 	void installOffLineKoPrices() {
 		configuration.put(FePriceImport.CONF_API_PRICES, "http://localhost:" + MOCK_PORT);
@@ -241,6 +214,340 @@ class ProvFePriceImportTest extends AbstractServerTest {
 		assertLookup("eu-west-2/ri-1m/oracle/tinav2.cxry.medium", lookup, 194.034d);
 	}
 
+	@Test
+	void installReadTimeout() throws Exception {
+		configuration.put(FePriceImport.CONF_API_PRICES, "http://localhost:" + MOCK_PORT + "/slow");
+		configuration.put(FePriceImport.CONF_READ_TIMEOUT, "100");
+		httpServer.stubFor(get(urlEqualTo("/slow/prices/pricing-os.csv")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withFixedDelay(2000)));
+		httpServer.start();
+		Assertions.assertThrows(SocketTimeoutException.class, () -> resource.install(false));
+
+		// The failed import is no more running
+		Assertions.assertFalse(resource.cancel());
+	}
+
+	@Test
+	void installRejects() throws Exception {
+		// Parse the sheets, whatever the previous snapshot
+		configuration.put(FePriceImport.CONF_SNAPSHOT_DIR, Files.createTempDirectory("fe-snapshot").toString());
+		install();
+
+		// The malformed row is rejected, the next rows are parsed
+		final var rejects = resource.getRejects();
+		Assertions.assertEquals(1, rejects.getCounts().get(FeRejectSink.Reason.INVALID_PRODUCT));
+		final var reject = rejects.getSamples().get(0);
+		Assertions.assertEquals("os", reject.sheet());
+		Assertions.assertTrue(reject.line() > 1);
+		Assertions.assertTrue(reject.value().startsWith("Paris roadmap"));
+	}
+
+	@Test
+	void installRecording() throws Exception {
+		final var file = Files.createTempFile("fe-import", ".jfr");
+		try (var recording = new Recording()) {
+			recording.enable(FePhaseEvent.class);
+			recording.enable(FeFlushEvent.class);
+			recording.enable(FeFetchEvent.class);
+			recording.start();
+			install();
+			recording.stop();
+			recording.dump(file);
+		}
+		final var events = RecordingFile.readAllEvents(file);
+		Files.delete(file);
+
+		// One event per phase, per region commit and per sheet download
+		final var phases = events.stream().filter(e -> e.getEventType().getName().equals("org.ligoj.prov.fe.Phase"))
+				.map(e -> e.getString("phase")).toList();
+		Assertions.assertEquals(List.of("initialize", "install-instances", "install-storages", "install-support"), phases);
+		Assertions.assertTrue(events.stream().anyMatch(e -> e.getEventType().getName().equals("org.ligoj.prov.fe.Flush")
+				&& e.getString("region").equals("eu-west-0") && e.getLong("rows") > 0));
+		Assertions.assertEquals(2, events.stream().filter(e -> e.getEventType().getName().equals("org.ligoj.prov.fe.Fetch")
+				&& e.getInt("status") == 200 && e.getLong("bytes") > 0).count());
+	}
+
+	@Test
+	void priceHistory() throws Exception {
+		install();
+		final var code = "eu-west-0/ri-3y/p2.2xlarge.8/linux";
+		final var history = historyRepository.findAllByCode(code);
+		Assertions.assertEquals(1, history.size());
+		Assertions.assertEquals(FePriceChange.CREATED, history.get(0).getKind());
+		Assertions.assertEquals(1L, history.get(0).getRevision());
+		Assertions.assertEquals(em.createQuery("SELECT cost FROM ProvInstancePrice WHERE code = :code", Double.class).setParameter("code", code)
+				.getSingleResult(), history.get(0).getCost(), DELTA);
+
+		// Unchanged costs are not recorded again
+		resetImportTask();
+		resource.install(false);
+		Assertions.assertEquals(1, historyRepository.findAllByCode(code).size());
+	}
+
+	@Test
+	void reimportUnchanged() throws Exception {
+		install();
+		em.flush();
+		em.clear();
+		final var revision = lease.getPublished(ProvFePluginResource.KEY);
+		final var history = historyRepository.count();
+
+		// The software variants of an OS are distinct prices
+		Assertions.assertTrue(countPrices("%/suse") > 0);
+		Assertions.assertTrue(countPrices("%/suse/sap") > 0);
+		Assertions.assertTrue(countPrices("%/suse/sap applications") > 0);
+
+		// The same catalog again: a new revision without any change
+		resetImportTask();
+		resource.install(false);
+		em.flush();
+		em.clear();
+		Assertions.assertEquals(revision + 1, lease.getPublished(ProvFePluginResource.KEY));
+		Assertions.assertEquals(history, historyRepository.count());
+		Assertions.assertEquals(0, historyRepository.findAllChanges(revision, revision + 1, 0, PageRequest.of(0, 10)).size());
+	}
+
+	@Test
+	void installSkipped() throws Exception {
+		mockServer();
+
+		// Another node holds a live lease
+		final var other = new FeCatalogLease();
+		applicationContext.getAutowireCapableBeanFactory().autowireBean(other);
+		Assertions.assertTrue(other.acquire(ProvFePluginResource.KEY));
+
+		// Nothing is imported, and the caller knows it
+		Assertions.assertThrows(FeImportSkippedException.class, () -> resource.install(false));
+		Assertions.assertEquals(0, em.createQuery("SELECT COUNT(id) FROM ProvInstancePrice", Long.class).getSingleResult());
+		Assertions.assertEquals(other.getOwner(), em.find(FeImportLease.class, ProvFePluginResource.KEY).getOwner());
+	}
+
+	@Test
+	void installLeaseStolen() throws Exception {
+		mockServer();
+
+		// Another node takes the lease while the first region is written
+		final var node = Mockito.spy(lease);
+		FieldUtils.writeField(resource, "lease", node, true);
+		Mockito.doAnswer(i -> {
+			em.createQuery("UPDATE FeImportLease SET owner = :owner WHERE node = :node").setParameter("owner", "thief")
+					.setParameter("node", ProvFePluginResource.KEY).executeUpdate();
+			return i.callRealMethod();
+		}).when(node).checkpoint(Mockito.eq(ProvFePluginResource.KEY), Mockito.anyString(), Mockito.anyString());
+
+		// The region transaction is rolled back and the import stops
+		Assertions.assertThrows(CancellationException.class, () -> resource.install(false));
+		Mockito.verify(node).checkpoint(Mockito.eq(ProvFePluginResource.KEY), Mockito.anyString(), Mockito.anyString());
+		em.clear();
+		final var stolen = em.find(FeImportLease.class, ProvFePluginResource.KEY);
+		Assertions.assertEquals("thief", stolen.getOwner());
+		Assertions.assertNull(stolen.getCheckpointRegion());
+		Assertions.assertNull(stolen.getCompleted());
+		Assertions.assertEquals(0, lease.getPublished(ProvFePluginResource.KEY));
+	}
+
+	@Test
+	void installBundledNoSnapshot() throws Exception {
+		// This plugin ships no bundled snapshot by default
+		Assertions.assertFalse(resource.installBundled());
+	}
+
+	@Test
+	void installBundled(@TempDir final Path bundle) throws Exception {
+		// Bundle the snapshot of the mock sheets, as the release build does
+		final var sheets = new ClassPathResource("mock-server/fe/pricing-os.csv").getFile().toPath().getParent();
+		final var bundled = bundle.resolve("catalog.bin");
+		try (var output = Files.newOutputStream(bundled)) {
+			FeCatalogSnapshotBuilder.build(Files.readAllBytes(sheets.resolve("pricing-os.csv")), Files.readAllBytes(sheets.resolve("pricing-compute.csv")))
+					.write(output);
+		}
+		resource.setBundledSnapshot(new FileSystemResource(bundled));
+		Assertions.assertTrue(resource.installBundled());
+		em.flush();
+		em.clear();
+
+		// The new prices are inserted by batches, with their history
+		final var prices = em.createQuery("SELECT COUNT(id) FROM ProvInstancePrice", Long.class).getSingleResult();
+		Assertions.assertTrue(prices > 0);
+		Assertions.assertEquals(prices, historyRepository.findAll().stream().filter(h -> h.getKind() == FePriceChange.CREATED).count());
+
+		// The remote refresh of the same sheets has nothing to change
+		final var history = historyRepository.count();
+		mockServer();
+		resetImportTask();
+		resource.install(false);
+		em.flush();
+		em.clear();
+		Assertions.assertEquals(prices, em.createQuery("SELECT COUNT(id) FROM ProvInstancePrice", Long.class).getSingleResult());
+		Assertions.assertEquals(history, historyRepository.count());
+	}
+
+	@Test
+	void lookupIndex() throws Exception {
+		install();
+		priceIndex.build();
+
+		// Same result as the generic lookup
+		var entry = priceIndex.lookup("eu-west-0", VmOs.LINUX, "ri-3y", 8, 12000);
+		Assertions.assertEquals("eu-west-0/ri-3y/p2.2xlarge.8/linux", entry.code());
+		Assertions.assertEquals(8, entry.cpu(), DELTA);
+		Assertions.assertEquals(64 * 1024, entry.ram());
+
+		// The cheapest type is returned
+		Assertions.assertEquals("eu-west-0/on-demand/t2.micro/linux", priceIndex.lookup("eu-west-0", VmOs.LINUX, "on-demand", 1, 512).code());
+
+		// No match
+		Assertions.assertNull(priceIndex.lookup("eu-west-0", VmOs.LINUX, "ri-3y", 1000, 1));
+		Assertions.assertNull(priceIndex.lookup("eu-west-0", VmOs.LINUX, "ri-3y", 1, Integer.MAX_VALUE));
+		Assertions.assertNull(priceIndex.lookup("any", VmOs.LINUX, "ri-3y", 1, 1));
+
+		// Stale index is reloaded from the database
+		priceIndex.invalidate();
+		Assertions.assertEquals(entry.id(), priceIndex.lookup("eu-west-0", VmOs.LINUX, "ri-3y", 8, 12000).id());
+	}
+
+	@Test
+	void installSweepPrices() throws Exception {
+		// Install a new configuration, the quote uses "eu-west-0/ri-3y-flexible/p2.2xlarge.8/linux"
+		install();
+		Assertions.assertTrue(countPrices("eu-west-1/%/t2.micro/%") > 0);
+
+		// Point to a catalog without "Amsterdam - t2.micro" and "Paris - p2.2xlarge.8"
+		configuration.put(FePriceImport.CONF_API_PRICES, "http://localhost:" + MOCK_PORT + "/sweep");
+		resetImportTask();
+		resource.install(false);
+		em.flush();
+		em.clear();
+
+		// Unused withdrawn prices are deleted, the used ones are retired
+		final var code = "eu-west-0/ri-3y-flexible/p2.2xlarge.8/linux";
+		Assertions.assertEquals(0, countPrices("eu-west-1/%/t2.micro/%"));
+		Assertions.assertEquals(0, countPrices("eu-west-0/ri-3y/p2.2xlarge.8/linux"));
+		Assertions.assertEquals(1, countPrices(code));
+		Assertions.assertTrue(countPrices("eu-west-0/%/t2.micro/%") > 0);
+		Assertions.assertEquals(List.of(code), retiredRepository.findAll().stream().map(FeRetiredPrice::getCode).toList());
+		Assertions.assertEquals(List.of(FePriceChange.CREATED, FePriceChange.RETIRED),
+				historyRepository.findAllByCode(code).stream().map(FePriceHistory::getKind).toList());
+
+		// The retired price is no more proposed
+		priceIndex.build();
+		final var entry = priceIndex.lookup("eu-west-0", VmOs.LINUX, "ri-3y-flexible", 8, 12000);
+		Assertions.assertTrue(entry == null || !entry.code().equals(code));
+
+		// The retired price is not retired again
+		resetImportTask();
+		resource.install(false);
+		em.flush();
+		em.clear();
+		Assertions.assertEquals(1, retiredRepository.count());
+		Assertions.assertEquals(2, historyRepository.findAllByCode(code).size());
+
+		// The price found again in the catalog is restored
+		configuration.put(FePriceImport.CONF_API_PRICES, "http://localhost:" + MOCK_PORT);
+		resetImportTask();
+		resource.install(false);
+		em.flush();
+		em.clear();
+		Assertions.assertEquals(0, retiredRepository.count());
+		Assertions.assertEquals(List.of(FePriceChange.CREATED, FePriceChange.RETIRED, FePriceChange.RESTORED),
+				historyRepository.findAllByCode(code).stream().map(FePriceHistory::getKind).toList());
+	}
+
+	@Test
+	void installCancelledHidden() throws Exception {
+		install();
+		final var code = "eu-west-0/ri-3y/p2.2xlarge.8/linux";
+
+		// The import of a catalog without "Paris - p2.2xlarge.8" is cancelled after the commit of "eu-west-0"
+		configuration.put(FePriceImport.CONF_API_PRICES, "http://localhost:" + MOCK_PORT + "/sweep");
+		final var node = Mockito.spy(lease);
+		FieldUtils.writeField(resource, "lease", node, true);
+		Mockito.doAnswer(i -> {
+			i.callRealMethod();
+			resource.cancel();
+			return null;
+		}).when(node).checkpoint(Mockito.eq(ProvFePluginResource.KEY), Mockito.anyString(), Mockito.eq("eu-west-0"));
+		resetImportTask();
+		Assertions.assertThrows(CancellationException.class, () -> resource.install(false));
+		em.flush();
+		em.clear();
+
+		// The committed region is not published: the withdrawn price is only recorded, and still proposed
+		Assertions.assertEquals(1, countPrices(code));
+		Assertions.assertEquals(List.of(FePriceChange.CREATED, FePriceChange.REMOVED),
+				historyRepository.findAllByCode(code).stream().map(FePriceHistory::getKind).toList());
+		priceIndex.build();
+		Assertions.assertEquals(code, priceIndex.lookup("eu-west-0", VmOs.LINUX, "ri-3y", 8, 12000).code());
+
+		// The resumed import skips "eu-west-0", but deletes its withdrawn price with the publication
+		FieldUtils.writeField(resource, "lease", lease, true);
+		resetImportTask();
+		resource.install(false);
+		em.flush();
+		em.clear();
+		Assertions.assertEquals(0, countPrices(code));
+		priceIndex.build();
+		final var entry = priceIndex.lookup("eu-west-0", VmOs.LINUX, "ri-3y", 8, 12000);
+		Assertions.assertTrue(entry == null || !entry.code().equals(code));
+	}
+
+	@Test
+	void installFilteredPrices() throws Exception {
+		mockServer();
+		configuration.put(FePriceImport.CONF_REGIONS, "eu-west-0");
+		configuration.put(FePriceImport.CONF_ITYPE, "t2.*");
+		configuration.put(FePriceImport.CONF_OS, "LINUX");
+		resource.install(false);
+		em.flush();
+		em.clear();
+
+		// Only the rows of the enabled region, type and OS are installed
+		Assertions.assertTrue(countPrices("eu-west-0/%/t2.micro/linux") > 0);
+		Assertions.assertEquals(0, countPrices("eu-west-1/%"));
+		Assertions.assertEquals(0, countPrices("%/p2.%"));
+		Assertions.assertEquals(0, countPrices("%/windows%"));
+	}
+
+	@Test
+	void updateQuoteCosts() throws Exception {
+		install();
+		final var instance = em.createQuery("FROM ProvQuoteInstance WHERE configuration.subscription.id = :subscription", ProvQuoteInstance.class)
+				.setParameter("subscription", subscription).setMaxResults(1).getSingleResult();
+		final var cost = instance.getCost();
+		instance.setCost(0d);
+		em.flush();
+		em.clear();
+
+		// No quote uses an unknown price
+		Assertions.assertEquals(0, quoteCostUpdater.update(List.of()));
+		Assertions.assertEquals(0, quoteCostUpdater.update(List.of(-1)));
+
+		// Only the quote using the changed price is updated, as the system user
+		Assertions.assertEquals(1, quoteCostUpdater.update(List.of(instance.getPrice().getId())));
+		Assertions.assertEquals(DEFAULT_USER, SecurityContextHolder.getContext().getAuthentication().getName());
+		em.flush();
+		em.clear();
+		Assertions.assertEquals(cost, em.find(ProvQuoteInstance.class, instance.getId()).getCost(), DELTA);
+	}
+
+	@Test
+	void updateQuoteCostsOnce() throws Exception {
+		install();
+		em.flush();
+		em.clear();
+
+		// The quotes are re-costed once after all the regions
+		final var updater = Mockito.spy(quoteCostUpdater);
+		FieldUtils.writeField(resource, "quoteCostUpdater", updater, true);
+		resetImportTask();
+		resource.install(true);
+		Mockito.verify(updater).update(Mockito.anyCollection());
+	}
+
+	private long countPrices(final String code) {
+		return em.createQuery("SELECT COUNT(id) FROM ProvInstancePrice WHERE code LIKE :code", Long.class).setParameter("code", code)
+				.getSingleResult();
+	}
+
 	private void checkImportStatus() {
 		final var status = this.resource.getImportCatalogResource().getTask("service:prov:fe");
 		Assertions.assertEquals(4, status.getDone());
@@ -252,23 +559,6 @@ class ProvFePriceImportTest extends AbstractServerTest {
 		Assertions.assertTrue(status.getNbLocations() >= 1);
 	}
 
-	private void mockServer() throws IOException {
-		configuration.put(FePriceImport.CONF_API_PRICES, "http://localhost:" + MOCK_PORT);
-		httpServer.stubFor(get(urlEqualTo("/prices/pricing-compute.csv"))
-				.willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(IOUtils.toString(
-						new ClassPathResource("mock-server/fe/pricing-compute.csv").getInputStream(), StandardCharsets.UTF_8))));
-		httpServer.stubFor(get(urlEqualTo("/prices/pricing-os.csv"))
-				.willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(IOUtils
-						.toString(new ClassPathResource("mock-server/fe/pricing-os.csv").getInputStream(), StandardCharsets.UTF_8))));
-		httpServer.stubFor(get(urlEqualTo("/v2/prices/pricing-compute.csv"))
-				.willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(IOUtils.toString(
-						new ClassPathResource("mock-server/fe/v2/pricing-compute.csv").getInputStream(), StandardCharsets.UTF_8))));
-		httpServer.stubFor(get(urlEqualTo("/v2/prices/pricing-os.csv"))
-				.willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(IOUtils.toString(
-						new ClassPathResource("mock-server/fe/v2/pricing-os.csv").getInputStream(), StandardCharsets.UTF_8))));
-		httpServer.start();
-	}
-
 	private ProvQuoteInstance check(final QuoteVo quote, final double minCost, final double maxCost,
 			final double instanceCost) {
 		Assertions.assertEquals(minCost, quote.getCost().getMin(), DELTA);
@@ -0,0 +1,58 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.prov.fe.catalog;
+
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.ligoj.app.plugin.prov.model.ProvInstancePrice;
+import org.ligoj.app.plugin.prov.model.ProvSupportType;
+
+/**
+ * Test class of {@link UpdateContext}
+ */
+class UpdateContextTest {
+
+	@Test
+	void loadOnDemand() {
+		final var context = new UpdateContext();
+		final var loads = new AtomicInteger();
+		context.setSupportTypesLoader(() -> {
+			loads.incrementAndGet();
+			final var types = new HashMap<String, ProvSupportType>();
+			types.put("basic", new ProvSupportType());
+			return types;
+		});
+		Assertions.assertEquals(0, loads.get());
+
+		// Loaded once, on the first access
+		Assertions.assertEquals(1, context.getSupportTypes().size());
+		Assertions.assertEquals(1, context.getSupportTypes().size());
+		Assertions.assertEquals(1, loads.get());
+
+		// Released at the end of the phase
+		context.releaseSupports();
+		Assertions.assertTrue(context.getSupportTypes().isEmpty());
+		Assertions.assertEquals(1, loads.get());
+	}
+
+	@Test
+	void releaseInstances() {
+		final var context = new UpdateContext();
+		context.setPrevious(new HashMap<>());
+		context.getSeenPrices().add("code");
+		context.getWrittenPrices().put("code", new UpdateContext.PriceState(1, 2d, null));
+		context.getPendingPrices().add(new ProvInstancePrice());
+		context.getChangedPrices().add(1);
+		context.releaseInstances();
+		Assertions.assertTrue(context.getPrevious().isEmpty());
+		Assertions.assertTrue(context.getSeenPrices().isEmpty());
+		Assertions.assertTrue(context.getWrittenPrices().isEmpty());
+		Assertions.assertTrue(context.getPendingPrices().isEmpty());
+		Assertions.assertTrue(context.getChangedPrices().isEmpty());
+		Assertions.assertNull(context.getOsPrices());
+	}
+}
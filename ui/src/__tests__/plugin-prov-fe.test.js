@@ -6,7 +6,7 @@ import def from '../index.js'
 beforeEach(() => { setActivePinia(createPinia()) })
 
 describe('plugin-prov-fe contract', () => {
-  it('exposes a valid i18n-only tool manifest', () => {
+  it('exposes a valid tool manifest', () => {
     expect(def.id).toBe('prov-fe')
     expect(def.requires).toEqual(['prov'])
     expect(def.routes).toBeUndefined()
@@ -17,7 +17,36 @@ describe('plugin-prov-fe contract', () => {
     def.install()
     expect(i18n.t('service:prov:fe:name')).toBe('Name')
   })
-  it('feature() throws for any action (legacy controller was empty)', () => {
+  it('feature() throws for any unknown action (legacy controller was empty)', () => {
     expect(() => def.feature('renderFeatures')).toThrow(/no feature "renderFeatures"/)
   })
+  it('feature() returns the import progress panel', () => {
+    expect(def.feature('importProgress')).toBeDefined()
+  })
+})
+
+describe('plugin-prov-fe progress service', () => {
+  class FakeEventSource {
+    constructor(url) { this.url = url; this.listeners = {}; this.closed = false; FakeEventSource.last = this }
+    addEventListener(type, listener) { this.listeners[type] = listener }
+    close() { this.closed = true }
+  }
+
+  it('forwards the progress events until closed', () => {
+    const received = []
+    const close = def.service.subscribeProgress((p) => received.push(p), { EventSource: FakeEventSource })
+    const source = FakeEventSource.last
+    expect(source.url).toBe('rest/service/prov/fe/progress')
+    source.listeners.progress({ data: '{"version":1,"running":true,"phase":"install-instances","rows":10,"totalRows":20}' })
+    expect(received).toEqual([{ version: 1, running: true, phase: 'install-instances', rows: 10, totalRows: 20 }])
+    close()
+    expect(source.closed).toBe(true)
+  })
+  it('formats the sizes and durations', () => {
+    expect(def.service.formatBytes(512)).toBe('512 B')
+    expect(def.service.formatBytes(2048)).toBe('2.0 KiB')
+    expect(def.service.formatBytes(3 * 1024 * 1024)).toBe('3.0 MiB')
+    expect(def.service.formatDuration(1500)).toBe('2s')
+    expect(def.service.formatDuration(125000)).toBe('2m 5s')
+  })
 })
@@ -1,6 +1,13 @@
 // Flexible Engine i18n for the prov-fe tool plugin. The legacy `fe.js`
-// controller was empty and parameter.csv is empty: the only label the
-// legacy nls bundle shipped is the VM `name`.
+// controller was empty and parameter.csv is empty: the legacy nls bundle
+// only shipped the VM `name`, the other labels are the import progress panel.
 export default {
   'service:prov:fe:name': 'Name',
+  'service:prov:fe:progress': 'Catalog import',
+  'service:prov:fe:progress:phase': 'Phase',
+  'service:prov:fe:progress:rows': 'Rows',
+  'service:prov:fe:progress:bytes': 'Downloaded',
+  'service:prov:fe:progress:eta': 'Remaining',
+  'service:prov:fe:progress:success': 'Import completed',
+  'service:prov:fe:progress:failed': 'Import failed',
 }
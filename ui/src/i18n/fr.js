@@ -1,4 +1,11 @@
 // Traductions Flexible Engine du plugin prov-fe. Voir en.js.
 export default {
   'service:prov:fe:name': 'Nom',
+  'service:prov:fe:progress': 'Import du catalogue',
+  'service:prov:fe:progress:phase': 'Phase',
+  'service:prov:fe:progress:rows': 'Lignes',
+  'service:prov:fe:progress:bytes': 'Téléchargé',
+  'service:prov:fe:progress:eta': 'Temps restant',
+  'service:prov:fe:progress:success': 'Import terminé',
+  'service:prov:fe:progress:failed': 'Import en échec',
 }
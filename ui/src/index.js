@@ -1,16 +1,20 @@
 /*
  * Plugin "prov-fe" — Flexible Engine implementation of plugin-prov.
  *
- * Tool-level, i18n-only plugin (`service:prov:fe`). The legacy `fe.js`
- * was an empty `define({})` and the `prov` parent has no delegation hook,
- * so this plugin's only contribution is the Flexible Engine i18n.
+ * Tool-level plugin (`service:prov:fe`). The legacy `fe.js` was an empty
+ * `define({})` and the `prov` parent has no delegation hook, so this plugin
+ * contributes the Flexible Engine i18n and the catalog import progress panel,
+ * available through the `importProgress` feature.
  */
 import { useI18nStore } from '@ligoj/host'
 import enMessages from './i18n/en.js'
 import frMessages from './i18n/fr.js'
 import service from './service.js'
+import ImportProgress from './components/ImportProgress.vue'
 
-const features = {}
+const features = {
+  importProgress: () => ImportProgress,
+}
 
 export default {
   id: 'prov-fe',
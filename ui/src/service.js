@@ -1,9 +1,35 @@
 /*
- * Service layer for plugin "prov-fe". The legacy `fe.js` was an empty
- * `define({})`, parameter.csv is empty, and the `prov` parent has no
- * delegation hook — so this tool's entire UI surface is the single `name`
- * label shipped via i18n. Kept empty for contract parity.
+ * Service layer for plugin "prov-fe". The catalog import pushes its live
+ * progress as server-sent events, this service subscribes to them.
  */
-const service = {}
+const PROGRESS_URL = 'rest/service/prov/fe/progress'
+
+/**
+ * Subscribe to the progress of the FE catalog imports. The stream stays open
+ * between two imports, the browser only reconnects after a network failure.
+ * @param {(progress: object) => void} onProgress Called with each progress snapshot.
+ * @param {object} [options] `url` and `EventSource` overrides.
+ * @returns {() => void} Closes the subscription.
+ */
+function subscribeProgress(onProgress, { url = PROGRESS_URL, EventSource = globalThis.EventSource } = {}) {
+  const source = new EventSource(url, { withCredentials: true })
+  source.addEventListener('progress', (event) => onProgress(JSON.parse(event.data)))
+  return () => source.close()
+}
+
+/** Human readable size of the downloaded sheets. */
+function formatBytes(bytes) {
+  if (bytes < 1024) return `${bytes} B`
+  if (bytes < 1024 * 1024) return `${(bytes / 1024).toFixed(1)} KiB`
+  return `${(bytes / 1024 / 1024).toFixed(1)} MiB`
+}
+
+/** Human readable remaining time, from milliseconds. */
+function formatDuration(ms) {
+  const seconds = Math.ceil(ms / 1000)
+  return seconds < 60 ? `${seconds}s` : `${Math.floor(seconds / 60)}m ${seconds % 60}s`
+}
+
+const service = { subscribeProgress, formatBytes, formatDuration }
 
 export default service